@@ -0,0 +1,9 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+public record ChangeSetKey(String changeSetId, String checksum) {
+}
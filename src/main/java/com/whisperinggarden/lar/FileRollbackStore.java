@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.exception.UnexpectedLiquibaseException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.whisperinggarden.lar.RollbackTableTransfer.escape;
+import static com.whisperinggarden.lar.RollbackTableTransfer.unescape;
+
+/*
+ * Keeps rollback statements in memory and persists every change to an append-only log file:
+ *   P<TAB>changeset id<TAB>checksum<TAB>statement 1<TAB>statement 2...
+ *   T<TAB>changeset id<TAB>checksum<TAB>tables the rollback touches (see RollbackPlanOptimizer)
+ *   X<TAB>changeset id<TAB>checksum<TAB>order of the last executed statement
+ *   D<TAB>changeset id<TAB>checksum
+ * The log is compacted on initialization when it holds more superseded records than live ones. Every record is
+ * flushed as it is written; close() releases the file.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class FileRollbackStore implements RollbackStore, Closeable {
+
+    private static final String PUT = "P";
+    private static final String TARGETS = "T";
+    private static final String EXECUTED = "X";
+    private static final String DELETE = "D";
+
+    private final Path file;
+
+    private final Map<ChangeSetKey, List<String>> statements = new LinkedHashMap<>();
+    private final Map<ChangeSetKey, String> targets = new HashMap<>();
+    private final Map<ChangeSetKey, Integer> executed = new HashMap<>();
+    private BufferedWriter writer;
+
+    @Override
+    public synchronized void initialize() {
+        if (writer != null) {
+            return;
+        }
+
+        try {
+            var records = 0;
+            if (Files.exists(file)) {
+                try (var lines = Files.lines(file, StandardCharsets.UTF_8)) {
+                    for (var line : (Iterable<String>) lines::iterator) {
+                        replay(line);
+                        records++;
+                    }
+                }
+            } else if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+
+            if (records > 2 * (statements.size() + targets.size() + executed.size())) {
+                compact();
+            }
+            writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            log.info("Loaded rollback statements for {} changesets from {}", statements.size(), file);
+        } catch (IOException e) {
+            throw new UnexpectedLiquibaseException("Unable to open the rollback store " + file, e);
+        }
+    }
+
+    @Override
+    public synchronized void put(String changeSetId, String checksum, List<String> sqlList) {
+        put(changeSetId, checksum, sqlList, null);
+    }
+
+    @Override
+    public synchronized void put(String changeSetId, String checksum, List<String> sqlList, String targets) {
+        var key = new ChangeSetKey(changeSetId, checksum);
+        statements.put(key, List.copyOf(sqlList));
+        executed.remove(key);
+        this.targets.remove(key);
+        append(putRecord(changeSetId, checksum, sqlList));
+        if (targets != null) {
+            this.targets.put(key, targets);
+            append(targetsRecord(key, targets));
+        }
+    }
+
+    @Override
+    public synchronized List<String> fetch(String changeSetId, String checksum) {
+        return statements.getOrDefault(new ChangeSetKey(changeSetId, checksum), List.of());
+    }
+
+    @Override
+    public synchronized String fetchTargets(String changeSetId, String checksum) {
+        return targets.get(new ChangeSetKey(changeSetId, checksum));
+    }
+
+    @Override
+    public synchronized Map<ChangeSetKey, List<String>> fetchAll() {
+        return new LinkedHashMap<>(statements);
+    }
+
+    @Override
+    public synchronized void markExecuted(String changeSetId, String checksum, int stmtOrder) {
+        var key = new ChangeSetKey(changeSetId, checksum);
+        if (statements.containsKey(key)) {
+            executed.put(key, stmtOrder);
+            append(executedRecord(key, stmtOrder));
+        }
+    }
+
+    @Override
+    public synchronized int getExecutedCount(String changeSetId, String checksum) {
+        return executed.getOrDefault(new ChangeSetKey(changeSetId, checksum), 0);
+    }
+
+    @Override
+    public synchronized void delete(String changeSetId, String checksum) {
+        var key = new ChangeSetKey(changeSetId, checksum);
+        executed.remove(key);
+        targets.remove(key);
+        if (statements.remove(key) != null) {
+            append(String.join("\t", DELETE, escape(changeSetId), escape(checksum)));
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (writer == null) {
+            return;
+        }
+
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("Unable to close the rollback store {} - {}", file, e.getMessage());
+        } finally {
+            writer = null;
+        }
+    }
+
+    private void replay(String line) throws IOException {
+        var fields = line.split("\t", -1);
+        if (fields.length < 3) {
+            throw new IOException("Malformed rollback store record: " + line);
+        }
+
+        var key = new ChangeSetKey(unescape(fields[1]), unescape(fields[2]));
+        switch (fields[0]) {
+            case PUT -> {
+                statements.put(key, Arrays.stream(fields, 3, fields.length)
+                        .map(RollbackTableTransfer::unescape)
+                        .toList());
+                executed.remove(key);
+                targets.remove(key);
+            }
+            case TARGETS -> {
+                if (fields.length != 4) {
+                    throw new IOException("Malformed rollback store record: " + line);
+                }
+                targets.put(key, unescape(fields[3]));
+            }
+            case EXECUTED -> {
+                if (fields.length != 4) {
+                    throw new IOException("Malformed rollback store record: " + line);
+                }
+                executed.put(key, Integer.parseInt(fields[3]));
+            }
+            case DELETE -> {
+                statements.remove(key);
+                executed.remove(key);
+                targets.remove(key);
+            }
+            default -> throw new IOException("Malformed rollback store record: " + line);
+        }
+    }
+
+    private void compact() throws IOException {
+        var tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (var out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            for (var entry : statements.entrySet()) {
+                out.write(putRecord(entry.getKey().changeSetId(), entry.getKey().checksum(), entry.getValue()));
+                out.newLine();
+                if (targets.containsKey(entry.getKey())) {
+                    out.write(targetsRecord(entry.getKey(), targets.get(entry.getKey())));
+                    out.newLine();
+                }
+                if (executed.containsKey(entry.getKey())) {
+                    out.write(executedRecord(entry.getKey(), executed.get(entry.getKey())));
+                    out.newLine();
+                }
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void append(String record) {
+        if (writer == null) {
+            throw new IllegalStateException("The rollback store " + file + " is not initialized");
+        }
+
+        try {
+            writer.write(record);
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            throw new UnexpectedLiquibaseException("Unable to write to the rollback store " + file, e);
+        }
+    }
+
+    private static String targetsRecord(ChangeSetKey key, String targets) {
+        return String.join("\t", TARGETS, escape(key.changeSetId()), escape(key.checksum()), escape(targets));
+    }
+
+    private static String executedRecord(ChangeSetKey key, int stmtOrder) {
+        return String.join("\t", EXECUTED, escape(key.changeSetId()), escape(key.checksum()), String.valueOf(stmtOrder));
+    }
+
+    private static String putRecord(String changeSetId, String checksum, List<String> sqlList) {
+        var fields = new ArrayList<String>(sqlList.size() + 3);
+        fields.add(PUT);
+        fields.add(escape(changeSetId));
+        fields.add(escape(checksum));
+        sqlList.forEach(sql -> fields.add(escape(sql)));
+        return String.join("\t", fields);
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.database.Database;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Hands out one FileRollbackStore per database - connection URL and Liquibase catalog and schema - so Liquibase beans
+ * migrating different databases never share rollback statements. Each store gets its own file next to the configured
+ * one, named after a hash of the database. The files are closed when the application context shuts down.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class FileRollbackStoreFactory implements RollbackStoreFactory, DisposableBean {
+
+    private final Path file;
+
+    private final Map<String, FileRollbackStore> stores = new ConcurrentHashMap<>();
+
+    @Override
+    public RollbackStore create(Database database) {
+        var key = String.join("\0", String.valueOf(database.getConnection().getURL()),
+                String.valueOf(database.getLiquibaseCatalogName()), String.valueOf(database.getLiquibaseSchemaName()));
+        return stores.computeIfAbsent(key, k -> {
+            var storeFile = resolveFile(k);
+            log.info("Using the rollback store {} for the schema {}", storeFile, database.getLiquibaseSchemaName());
+            return new FileRollbackStore(storeFile);
+        });
+    }
+
+    @Override
+    public void destroy() {
+        stores.values().forEach(FileRollbackStore::close);
+        stores.clear();
+    }
+
+    // the hash keeps credentials that may be part of the URL out of the file name
+    Path resolveFile(String databaseKey) {
+        String hash;
+        try {
+            hash = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                    .digest(databaseKey.getBytes(StandardCharsets.UTF_8)), 0, 6);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+
+        var name = file.getFileName().toString();
+        var dot = name.lastIndexOf('.');
+        return file.resolveSibling(dot > 0
+                ? name.substring(0, dot) + "-" + hash + name.substring(dot)
+                : name + "-" + hash);
+    }
+}
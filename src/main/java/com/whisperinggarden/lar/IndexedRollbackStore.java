@@ -0,0 +1,311 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.UnexpectedLiquibaseException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_CHECKSUM;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_HASH;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_ID;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ID;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMT;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMTEXECUTED;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMTORDER;
+import static com.whisperinggarden.lar.LiquibaseRollbackUtils.changeSetHash;
+
+/*
+ * JDBC rollback store with an in-memory index of the rollback table, built with one sequential scan on the first
+ * lookup. The index keeps interned changeset ids, checksums as bytes and the row ids of every changeset's statements
+ * in primitive arrays, so fetching a changeset's rollback is a primary key lookup of just its statements and executed
+ * counts need no query at all. Entries are found through an open addressing table of changeset hashes; entries with
+ * the same hash are chained. Writes go to the table; changesets written after the scan bypass the index.
+ */
+@Slf4j
+public class IndexedRollbackStore implements RollbackStore {
+
+    private static final int NO_ENTRY = -1;
+    // Oracle allows at most 1000 expressions in an IN list
+    private static final int MAX_IN_LIST = 1000;
+
+    private final Database db;
+    private final LiquibaseRollbackProperties properties;
+    private final JdbcRollbackStore delegate;
+
+    // per changeset entry:
+    private String[] ids;
+    private byte[][] checksums;
+    private int[] firstStatement;
+    private int[] statementCount;
+    private int[] executedCount;
+    private long[] hashes;
+    private int[] nextWithSameHash;
+    private int entries;
+
+    // per statement, grouped by entry in statement order:
+    private long[] rowIds;
+    private int statements;
+
+    // slot -> first entry with the hash, NO_ENTRY when empty; null until the index is built
+    private int[] hashSlots;
+    private final Set<ChangeSetKey> bypassed = new HashSet<>();
+
+    public IndexedRollbackStore(Database db, LiquibaseRollbackProperties properties) {
+        this.db = db;
+        this.properties = properties;
+        this.delegate = new JdbcRollbackStore(db, properties);
+    }
+
+    @Override
+    public void initialize() {
+        delegate.initialize();
+        hashSlots = null;
+        bypassed.clear();
+    }
+
+    @Override
+    public void put(String changeSetId, String checksum, List<String> statements) {
+        put(changeSetId, checksum, statements, null);
+    }
+
+    @Override
+    public void put(String changeSetId, String checksum, List<String> statements, String targets) {
+        delegate.put(changeSetId, checksum, statements, targets);
+        if (hashSlots != null) {
+            bypassed.add(new ChangeSetKey(changeSetId, checksum));
+        }
+    }
+
+    @Override
+    public List<String> fetch(String changeSetId, String checksum) {
+        if (bypassed.contains(new ChangeSetKey(changeSetId, checksum))) {
+            return delegate.fetch(changeSetId, checksum);
+        }
+        var entry = findEntry(changeSetId, checksum);
+        if (entry == NO_ENTRY || statementCount[entry] == 0) {
+            return List.of();
+        }
+        return loadStatements(entry);
+    }
+
+    @Override
+    public String fetchTargets(String changeSetId, String checksum) {
+        return delegate.fetchTargets(changeSetId, checksum);
+    }
+
+    @Override
+    public Map<ChangeSetKey, List<String>> fetchAll() {
+        return delegate.fetchAll();
+    }
+
+    @Override
+    public void markExecuted(String changeSetId, String checksum, int stmtOrder) {
+        delegate.markExecuted(changeSetId, checksum, stmtOrder);
+        if (bypassed.contains(new ChangeSetKey(changeSetId, checksum))) {
+            return;
+        }
+        var entry = findEntry(changeSetId, checksum);
+        if (entry != NO_ENTRY) {
+            executedCount[entry] = Math.max(executedCount[entry], stmtOrder);
+        }
+    }
+
+    @Override
+    public int getExecutedCount(String changeSetId, String checksum) {
+        if (bypassed.contains(new ChangeSetKey(changeSetId, checksum))) {
+            return delegate.getExecutedCount(changeSetId, checksum);
+        }
+        var entry = findEntry(changeSetId, checksum);
+        return entry != NO_ENTRY ? executedCount[entry] : 0;
+    }
+
+    @Override
+    public void delete(String changeSetId, String checksum) {
+        delegate.delete(changeSetId, checksum);
+        bypassed.remove(new ChangeSetKey(changeSetId, checksum));
+        var entry = findEntry(changeSetId, checksum);
+        if (entry != NO_ENTRY) {
+            statementCount[entry] = 0;
+            executedCount[entry] = 0;
+        }
+    }
+
+    int getIndexedChangeSetCount() {
+        ensureIndex();
+        return entries;
+    }
+
+    private int findEntry(String changeSetId, String checksum) {
+        ensureIndex();
+        var checksumBytes = checksum.getBytes(StandardCharsets.UTF_8);
+        var entry = hashSlots[findSlot(changeSetHash(changeSetId, checksum))];
+        while (entry != NO_ENTRY
+                && !(ids[entry].equals(changeSetId) && Arrays.equals(checksums[entry], checksumBytes))) {
+            entry = nextWithSameHash[entry];
+        }
+        return entry;
+    }
+
+    private void ensureIndex() {
+        if (hashSlots == null) {
+            buildIndex();
+        }
+    }
+
+    // linear probing; the table is at most half full, so there is always an empty slot to stop at
+    private int findSlot(long hash) {
+        var mask = hashSlots.length - 1;
+        var slot = Long.hashCode(hash * 0x9E3779B97F4A7C15L) & mask;
+        while (hashSlots[slot] != NO_ENTRY && hashes[hashSlots[slot]] != hash) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void buildHashSlots() {
+        hashSlots = new int[Integer.highestOneBit(Math.max(16, entries * 2) - 1) << 1];
+        Arrays.fill(hashSlots, NO_ENTRY);
+        for (var entry = 0; entry < entries; entry++) {
+            var slot = findSlot(hashes[entry]);
+            nextWithSameHash[entry] = hashSlots[slot];
+            hashSlots[slot] = entry;
+        }
+    }
+
+    private void buildIndex() {
+        var start = System.nanoTime();
+        ids = new String[64];
+        checksums = new byte[64][];
+        firstStatement = new int[64];
+        statementCount = new int[64];
+        executedCount = new int[64];
+        hashes = new long[64];
+        nextWithSameHash = new int[64];
+        rowIds = new long[256];
+        entries = 0;
+        statements = 0;
+        bypassed.clear();
+
+        // grouped by changeset, not by hash, so rows with and without a stored hash end up in the same entry
+        var sql = "SELECT %s, %s, %s, %s, %s FROM %s ORDER BY %s, %s, %s".formatted(
+                COL_ID, COL_CHANGELOG_HASH, COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM, COL_ROLLBACKSTMTEXECUTED,
+                rollbackTable(), COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM, COL_ROLLBACKSTMTORDER);
+        var internedIds = new HashMap<String, String>();
+        try (var stmt = getConnection().createStatement()) {
+            stmt.setFetchSize(1000);
+            try (var rs = stmt.executeQuery(sql)) {
+                String lastId = null;
+                String lastChecksum = null;
+                while (rs.next()) {
+                    var id = rs.getString(3);
+                    var checksum = rs.getString(4);
+                    if (!id.equals(lastId) || !checksum.equals(lastChecksum)) {
+                        var hash = rs.getLong(2);
+                        addEntry(internedIds.computeIfAbsent(id, key -> key), checksum,
+                                rs.wasNull() ? changeSetHash(id, checksum) : hash);
+                        lastId = id;
+                        lastChecksum = checksum;
+                    }
+                    addStatement(rs.getLong(1), rs.getBoolean(5));
+                }
+            }
+        } catch (SQLException e) {
+            throw new UnexpectedLiquibaseException("Unable to index rollback statements - " + e.getMessage(), e);
+        }
+        buildHashSlots();
+
+        log.info("Indexed {} rollback statements of {} changesets in {} ms", statements, entries,
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void addEntry(String changeSetId, String checksum, long hash) {
+        if (entries == ids.length) {
+            var capacity = entries * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            checksums = Arrays.copyOf(checksums, capacity);
+            firstStatement = Arrays.copyOf(firstStatement, capacity);
+            statementCount = Arrays.copyOf(statementCount, capacity);
+            executedCount = Arrays.copyOf(executedCount, capacity);
+            hashes = Arrays.copyOf(hashes, capacity);
+            nextWithSameHash = Arrays.copyOf(nextWithSameHash, capacity);
+        }
+        ids[entries] = changeSetId;
+        checksums[entries] = checksum.getBytes(StandardCharsets.UTF_8);
+        firstStatement[entries] = statements;
+        hashes[entries] = hash;
+        entries++;
+    }
+
+    private void addStatement(long rowId, boolean executed) {
+        if (statements == rowIds.length) {
+            rowIds = Arrays.copyOf(rowIds, statements * 2);
+        }
+        rowIds[statements++] = rowId;
+        statementCount[entries - 1]++;
+        // rows come in statement order, so the count so far is the order of this statement
+        if (executed) {
+            executedCount[entries - 1] = statementCount[entries - 1];
+        }
+    }
+
+    private List<String> loadStatements(int entry) {
+        var first = firstStatement[entry];
+        var count = statementCount[entry];
+        var texts = new HashMap<Long, String>();
+        try {
+            for (var offset = 0; offset < count; offset += MAX_IN_LIST) {
+                loadStatementTexts(first + offset, Math.min(MAX_IN_LIST, count - offset), texts);
+            }
+        } catch (SQLException e) {
+            throw new UnexpectedLiquibaseException("Unable to fetch rollback statements - " + e.getMessage(), e);
+        }
+
+        return Arrays.stream(rowIds, first, first + count)
+                .filter(texts::containsKey)
+                .mapToObj(texts::get)
+                .toList();
+    }
+
+    private void loadStatementTexts(int first, int count, Map<Long, String> texts) throws SQLException {
+        var sql = "SELECT %s, %s FROM %s WHERE %s IN (%s)".formatted(COL_ID, COL_ROLLBACKSTMT, rollbackTable(),
+                COL_ID, String.join(", ", Collections.nCopies(count, "?")));
+        try (var stmt = getConnection().prepareStatement(sql)) {
+            for (var i = 0; i < count; i++) {
+                stmt.setLong(i + 1, rowIds[first + i]);
+            }
+            try (var rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    texts.put(rs.getLong(1), rs.getString(2));
+                }
+            }
+        }
+    }
+
+    private String rollbackTable() {
+        return db.escapeTableName(db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(),
+                properties.getDbRollbackTableName());
+    }
+
+    private Connection getConnection() {
+        if (db.getConnection() instanceof JdbcConnection connection) {
+            return connection.getUnderlyingConnection();
+        }
+        throw new UnexpectedLiquibaseException("The indexed rollback store requires a JDBC connection");
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.Scope;
+import liquibase.change.AddColumnConfig;
+import liquibase.database.Database;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.datatype.DataTypeFactory;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.UnexpectedLiquibaseException;
+import liquibase.executor.Executor;
+import liquibase.executor.ExecutorService;
+import liquibase.snapshot.InvalidExampleException;
+import liquibase.snapshot.SnapshotGeneratorFactory;
+import liquibase.statement.AutoIncrementConstraint;
+import liquibase.statement.SqlStatement;
+import liquibase.statement.NotNullConstraint;
+import liquibase.statement.core.AddColumnStatement;
+import liquibase.statement.core.CreateIndexStatement;
+import liquibase.statement.core.CreateTableStatement;
+import liquibase.statement.core.DeleteStatement;
+import liquibase.statement.core.InsertStatement;
+import liquibase.statement.core.UpdateStatement;
+import liquibase.structure.core.Column;
+import liquibase.structure.core.Table;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_CHECKSUM;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_HASH;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_ID;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ID;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMT;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMTEXECUTED;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMTORDER;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKTARGET;
+import static com.whisperinggarden.lar.LiquibaseRollbackUtils.changeSetHash;
+import static com.whisperinggarden.lar.LiquibaseRollbackUtils.hasTable;
+
+@Slf4j
+@RequiredArgsConstructor
+public class JdbcRollbackStore implements RollbackStore {
+
+    public static final String IDX_CHANGELOG_HASH = "IDX_RB_CHANGELOGHASHORD";
+
+    static final int TARGET_MAX_LENGTH = 1000;
+
+    static final int BACKFILL_BATCH_SIZE = 500;
+
+    // rows are looked up by the hash, the full values guard against hash collisions
+    private static final String KEY_PREDICATE = ":name = :value AND :name = :value AND :name = :value";
+
+    // rows inserted by older instances during a rolling deploy have no hash; they are only looked for when the
+    // hash lookup finds nothing, so the common case stays an index seek
+    private static final String NULL_HASH_KEY_PREDICATE = ":name IS NULL AND :name = :value AND :name = :value";
+
+    private final Database db;
+    private final LiquibaseRollbackProperties properties;
+
+    private boolean migrated;
+
+    @Override
+    public void initialize() {
+        var tableName = properties.getDbRollbackTableName();
+        if (hasTable(db, tableName)) {
+            migrate();
+            return;
+        }
+
+        var executor = getExecutor();
+        var intType = DataTypeFactory.getInstance().fromDescription("int", db);
+        var bigintType = DataTypeFactory.getInstance().fromDescription("bigint", db);
+        var booleanType = DataTypeFactory.getInstance().fromDescription("boolean", db);
+        var varchar255Type = DataTypeFactory.getInstance().fromDescription("varchar(255)", db);
+        var varchar100Type = DataTypeFactory.getInstance().fromDescription("varchar(100)", db);
+        var targetType = DataTypeFactory.getInstance().fromDescription("varchar(%d)".formatted(TARGET_MAX_LENGTH), db);
+        var varchar4KType = DataTypeFactory.getInstance()
+                .fromDescription("varchar(%d)".formatted(properties.getRollbackStatementMaxLength()), db);
+
+        log.info("Creating {} table", tableName);
+
+        try {
+            executor.execute(new CreateTableStatement(db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(), tableName)
+                    .addPrimaryKeyColumn(COL_ID, intType, null, null, null, new AutoIncrementConstraint(COL_ID))
+                    .addColumn(COL_CHANGELOG_ID, varchar255Type, new NotNullConstraint(COL_CHANGELOG_ID))
+                    .addColumn(COL_CHANGELOG_CHECKSUM, varchar100Type, new NotNullConstraint(COL_CHANGELOG_CHECKSUM))
+                    .addColumn(COL_ROLLBACKSTMT, varchar4KType, new NotNullConstraint(COL_ROLLBACKSTMT))
+                    .addColumn(COL_ROLLBACKSTMTORDER, intType, new NotNullConstraint(COL_ROLLBACKSTMTORDER))
+                    .addColumn(COL_CHANGELOG_HASH, bigintType)
+                    .addColumn(COL_ROLLBACKSTMTEXECUTED, booleanType)
+                    .addColumn(COL_ROLLBACKTARGET, targetType));
+
+            executor.execute(new CreateIndexStatement("IDX_RB_CHANGELOGIDSUMORD",
+                    db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(), tableName, true, null,
+                    new AddColumnConfig(new Column(COL_CHANGELOG_ID)),
+                    new AddColumnConfig(new Column(COL_CHANGELOG_CHECKSUM)),
+                    new AddColumnConfig(new Column(COL_ROLLBACKSTMTORDER))));
+
+            createHashIndex();
+
+            db.commit();
+            migrated = true;
+        } catch (DatabaseException e) {
+            throw new UnexpectedLiquibaseException("Unable to create the rollback table", e);
+        }
+    }
+
+    private void migrate() {
+        var tableName = properties.getDbRollbackTableName();
+        var executor = getExecutor();
+
+        try {
+            if (addMissingColumn(COL_CHANGELOG_HASH, "bigint")) {
+                createHashIndex();
+            }
+            addMissingColumn(COL_ROLLBACKSTMTEXECUTED, "boolean");
+            addMissingColumn(COL_ROLLBACKTARGET, "varchar(%d)".formatted(TARGET_MAX_LENGTH));
+
+            // rows written by older versions or copied in by other tools have no hash yet
+            var keys = executor.queryForList(new SelectStatement(db.getLiquibaseCatalogName(),
+                            db.getLiquibaseSchemaName(), tableName)
+                            .addColumnsToSelect(COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM)
+                            .setWhere(":name IS NULL")
+                            .addWhereColumnNames(COL_CHANGELOG_HASH))
+                    .stream()
+                    .map(row -> new ChangeSetKey(
+                            row.get(COL_CHANGELOG_ID).toString(), row.get(COL_CHANGELOG_CHECKSUM).toString()))
+                    .distinct()
+                    .toList();
+            if (!keys.isEmpty()) {
+                backfillHashes(keys);
+                log.info("Backfilled {} for {} changesets", COL_CHANGELOG_HASH, keys.size());
+            }
+
+            db.commit();
+            migrated = true;
+        } catch (DatabaseException | InvalidExampleException | SQLException e) {
+            throw new UnexpectedLiquibaseException("Unable to migrate the rollback table - " + e.getMessage(), e);
+        }
+    }
+
+    private void backfillHashes(List<ChangeSetKey> keys) throws SQLException {
+        var sql = "UPDATE %s SET %s = ? WHERE %s = ? AND %s = ?".formatted(rollbackTable(), COL_CHANGELOG_HASH,
+                COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM);
+        try (var stmt = getConnection().prepareStatement(sql)) {
+            var batched = 0;
+            for (var key : keys) {
+                stmt.setLong(1, changeSetHash(key.changeSetId(), key.checksum()));
+                stmt.setString(2, key.changeSetId());
+                stmt.setString(3, key.checksum());
+                stmt.addBatch();
+                if (++batched == BACKFILL_BATCH_SIZE) {
+                    stmt.executeBatch();
+                    batched = 0;
+                }
+            }
+            if (batched > 0) {
+                stmt.executeBatch();
+            }
+        }
+    }
+
+    // a table written by an older version may be used before anyone has called initialize()
+    private void migrateIfNeeded() {
+        if (!migrated && hasTable(db, properties.getDbRollbackTableName())) {
+            migrate();
+        }
+    }
+
+    private boolean addMissingColumn(String columnName, String columnType)
+            throws DatabaseException, InvalidExampleException {
+
+        var tableName = properties.getDbRollbackTableName();
+        if (SnapshotGeneratorFactory.getInstance().has(new Column(Table.class, db.getLiquibaseCatalogName(),
+                db.getLiquibaseSchemaName(), tableName, columnName), db)) {
+            return false;
+        }
+
+        log.info("Adding {} column to {} table", columnName, tableName);
+        getExecutor().execute(new AddColumnStatement(db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(),
+                tableName, columnName, columnType, null));
+        return true;
+    }
+
+    private void createHashIndex() throws DatabaseException {
+        getExecutor().execute(new CreateIndexStatement(IDX_CHANGELOG_HASH,
+                db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(), properties.getDbRollbackTableName(),
+                false, null,
+                new AddColumnConfig(new Column(COL_CHANGELOG_HASH)),
+                new AddColumnConfig(new Column(COL_ROLLBACKSTMTORDER))));
+    }
+
+    @Override
+    public void put(String changeSetId, String checksum, List<String> statements) {
+        put(changeSetId, checksum, statements, null);
+    }
+
+    // the targets are kept on the first statement's row; targets too long for the column are left out
+    @Override
+    public void put(String changeSetId, String checksum, List<String> statements, String targets) {
+        migrateIfNeeded();
+        var replaced = deleteRecords(changeSetId, checksum);
+        if (replaced > 0) {
+            log.info("Replacing {} stale rollback statements for the changeset {}", replaced, changeSetId);
+        }
+
+        var executor = getExecutor();
+        var storedTargets = targets != null && targets.length() <= TARGET_MAX_LENGTH ? targets : null;
+        var stmtOrder = 1;
+        for (var sql : statements) {
+            try {
+                logUpdatedRecords("inserted", executor.update(new InsertStatement(
+                        db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(), properties.getDbRollbackTableName())
+                        .addColumnValue(COL_CHANGELOG_ID, changeSetId)
+                        .addColumnValue(COL_CHANGELOG_CHECKSUM, checksum)
+                        .addColumnValue(COL_ROLLBACKSTMT, sql)
+                        .addColumnValue(COL_ROLLBACKSTMTORDER, stmtOrder)
+                        .addColumnValue(COL_CHANGELOG_HASH, changeSetHash(changeSetId, checksum))
+                        .addColumnValue(COL_ROLLBACKTARGET, stmtOrder++ == 1 ? storedTargets : null)));
+            } catch (DatabaseException e) {
+                throw new UnexpectedLiquibaseException(
+                        "Unable to insert a rollback record - " + e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public List<String> fetch(String changeSetId, String checksum) {
+        migrateIfNeeded();
+        try {
+            return selectByKey(nullHash -> selectStatement(nullHash, changeSetId, checksum)
+                            .addColumnsToSelect(COL_ROLLBACKSTMT)
+                            .setOrderBy(COL_ROLLBACKSTMTORDER))
+                    .stream()
+                    .map(row -> row.get(COL_ROLLBACKSTMT).toString())
+                    .toList();
+        } catch (DatabaseException e) {
+            throw new UnexpectedLiquibaseException("Unable to fetch rollback statements - " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String fetchTargets(String changeSetId, String checksum) {
+        migrateIfNeeded();
+        try {
+            return selectByKey(nullHash -> selectStatement(nullHash, changeSetId, checksum, COL_ROLLBACKSTMTORDER, 1)
+                            .addColumnsToSelect(COL_ROLLBACKTARGET))
+                    .stream()
+                    .map(row -> row.get(COL_ROLLBACKTARGET))
+                    .filter(Objects::nonNull)
+                    .map(Object::toString)
+                    .findFirst()
+                    .orElse(null);
+        } catch (DatabaseException e) {
+            throw new UnexpectedLiquibaseException("Unable to fetch rollback targets - " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Map<ChangeSetKey, List<String>> fetchAll() {
+        Map<ChangeSetKey, List<String>> result = new LinkedHashMap<>();
+        try {
+            getExecutor().queryForList(new SelectStatement(db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(),
+                            properties.getDbRollbackTableName())
+                            .addColumnsToSelect(COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM, COL_ROLLBACKSTMT)
+                            .setOrderBy(COL_ROLLBACKSTMTORDER))
+                    .forEach(row -> result.computeIfAbsent(new ChangeSetKey(
+                                    row.get(COL_CHANGELOG_ID).toString(), row.get(COL_CHANGELOG_CHECKSUM).toString()),
+                                    key -> new ArrayList<>())
+                            .add(row.get(COL_ROLLBACKSTMT).toString()));
+        } catch (DatabaseException e) {
+            throw new UnexpectedLiquibaseException("Unable to fetch rollback statements - " + e.getMessage(), e);
+        }
+        return result;
+    }
+
+    @Override
+    public void markExecuted(String changeSetId, String checksum, int stmtOrder) {
+        migrateIfNeeded();
+        try {
+            updateByKey(nullHash -> new UpdateStatement(
+                    db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(), properties.getDbRollbackTableName())
+                    .addNewColumnValue(COL_ROLLBACKSTMTEXECUTED, true)
+                    .setWhereClause(keyPredicate(nullHash) + " AND :name <= :value")
+                    .addWhereColumnName(COL_CHANGELOG_HASH)
+                    .addWhereColumnName(COL_CHANGELOG_ID)
+                    .addWhereColumnName(COL_CHANGELOG_CHECKSUM)
+                    .addWhereColumnName(COL_ROLLBACKSTMTORDER)
+                    .addWhereParameters(keyParameters(nullHash, changeSetId, checksum, stmtOrder)));
+        } catch (DatabaseException e) {
+            throw new UnexpectedLiquibaseException("Unable to checkpoint a rollback statement - " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public int getExecutedCount(String changeSetId, String checksum) {
+        migrateIfNeeded();
+        try {
+            return selectByKey(nullHash -> selectStatement(nullHash, changeSetId, checksum,
+                                    COL_ROLLBACKSTMTEXECUTED, true)
+                            .addColumnsToSelect(COL_ROLLBACKSTMTORDER))
+                    .stream()
+                    .mapToInt(row -> ((Number) row.get(COL_ROLLBACKSTMTORDER)).intValue())
+                    .max()
+                    .orElse(0);
+        } catch (DatabaseException e) {
+            throw new UnexpectedLiquibaseException("Unable to fetch the rollback checkpoint - " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void delete(String changeSetId, String checksum) {
+        migrateIfNeeded();
+        logUpdatedRecords("deleted", deleteRecords(changeSetId, checksum));
+    }
+
+    private int deleteRecords(String changeSetId, String checksum) {
+        try {
+            return updateByKey(nullHash -> new DeleteStatement(
+                    db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(), properties.getDbRollbackTableName())
+                    .setWhere(keyPredicate(nullHash))
+                    .addWhereColumnName(COL_CHANGELOG_HASH)
+                    .addWhereColumnName(COL_CHANGELOG_ID)
+                    .addWhereColumnName(COL_CHANGELOG_CHECKSUM)
+                    .addWhereParameters(keyParameters(nullHash, changeSetId, checksum)));
+        } catch (DatabaseException e) {
+            throw new UnexpectedLiquibaseException("Unable to delete rollback statements - " + e.getMessage(), e);
+        }
+    }
+
+    private List<Map<String, ?>> selectByKey(Function<Boolean, SelectStatement> statement)
+            throws DatabaseException {
+
+        var rows = getExecutor().queryForList(statement.apply(false));
+        return rows.isEmpty() ? getExecutor().queryForList(statement.apply(true)) : rows;
+    }
+
+    private int updateByKey(Function<Boolean, SqlStatement> statement) throws DatabaseException {
+        var count = getExecutor().update(statement.apply(false));
+        return count == 0 ? getExecutor().update(statement.apply(true)) : count;
+    }
+
+    private SelectStatement selectStatement(boolean nullHash, String changeSetId, String checksum) {
+        return new SelectStatement(db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(),
+                properties.getDbRollbackTableName())
+                .setWhere(keyPredicate(nullHash))
+                .addWhereColumnNames(COL_CHANGELOG_HASH, COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM)
+                .addWhereParameters(keyParameters(nullHash, changeSetId, checksum));
+    }
+
+    private SelectStatement selectStatement(boolean nullHash, String changeSetId, String checksum,
+            String columnName, Object value) {
+
+        return new SelectStatement(db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(),
+                properties.getDbRollbackTableName())
+                .setWhere(keyPredicate(nullHash) + " AND :name = :value")
+                .addWhereColumnNames(COL_CHANGELOG_HASH, COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM, columnName)
+                .addWhereParameters(keyParameters(nullHash, changeSetId, checksum, value));
+    }
+
+    private static String keyPredicate(boolean nullHash) {
+        return nullHash ? NULL_HASH_KEY_PREDICATE : KEY_PREDICATE;
+    }
+
+    private static Object[] keyParameters(boolean nullHash, String changeSetId, String checksum, Object... more) {
+        var parameters = new ArrayList<>();
+        if (!nullHash) {
+            parameters.add(changeSetHash(changeSetId, checksum));
+        }
+        parameters.add(changeSetId);
+        parameters.add(checksum);
+        parameters.addAll(List.of(more));
+        return parameters.toArray();
+    }
+
+    private String rollbackTable() {
+        return db.escapeTableName(db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(),
+                properties.getDbRollbackTableName());
+    }
+
+    private Connection getConnection() {
+        if (db.getConnection() instanceof JdbcConnection connection) {
+            return connection.getUnderlyingConnection();
+        }
+        throw new UnexpectedLiquibaseException("The rollback table requires a JDBC connection");
+    }
+
+    private Executor getExecutor() {
+        return Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", db);
+    }
+
+    private void logUpdatedRecords(String action, int count) {
+        log.info("{} {} {}", count, (count == 1 ? "record" : "records"), action);
+    }
+}
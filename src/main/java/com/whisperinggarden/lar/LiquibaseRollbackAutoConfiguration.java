@@ -5,18 +5,93 @@
 
 package com.whisperinggarden.lar;
 
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.integration.spring.SpringLiquibase;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnSingleCandidate;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseAutoConfiguration;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.core.io.ResourceLoader;
 
-@AutoConfiguration
+import javax.sql.DataSource;
+import java.nio.file.Path;
+
+@AutoConfiguration(after = DataSourceAutoConfiguration.class, before = LiquibaseAutoConfiguration.class)
 @EnableConfigurationProperties(LiquibaseRollbackProperties.class)
 @ConditionalOnProperty(prefix = "spring.liquibase-rollback", name = "enabled", matchIfMissing = true)
+@ImportRuntimeHints(LiquibaseRollbackRuntimeHints.class)
 public class LiquibaseRollbackAutoConfiguration {
 
     @Bean
-    public LiquibaseRollbackCustomizer liquibaseRollbackCustomizer(LiquibaseRollbackProperties properties) {
-        return new LiquibaseRollbackCustomizer(properties);
+    public LiquibaseRollbackCustomizer liquibaseRollbackCustomizer(LiquibaseRollbackProperties properties,
+            ObjectProvider<LiquibaseRollbackPrefetcher> prefetcher, ObjectProvider<RollbackStoreFactory> storeFactory) {
+
+        var customizer = new LiquibaseRollbackCustomizer(properties);
+        storeFactory.ifUnique(customizer::setRollbackStoreFactory);
+        customizer.setPrefetchSupplier(() -> {
+            var available = prefetcher.getIfAvailable();
+            return available != null ? available.takePrefetch() : null;
+        });
+        return customizer;
+    }
+
+    @Bean
+    public static BeanPostProcessor liquibaseRollbackFilterPostProcessor() {
+        // each SpringLiquibase runs with its own contexts and labels, so filtered out changesets are skipped
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof SpringLiquibase springLiquibase
+                        && springLiquibase.getCustomizer() instanceof LiquibaseRollbackCustomizer customizer) {
+                    springLiquibase.setCustomizer(new LiquibaseRollbackCustomizer.FilteredCustomizer(customizer,
+                            new Contexts(springLiquibase.getContexts()),
+                            new LabelExpression(springLiquibase.getLabelFilter())));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "spring.liquibase-rollback", name = "store", havingValue = "file")
+    public FileRollbackStoreFactory fileRollbackStoreFactory(LiquibaseRollbackProperties properties) {
+        return new FileRollbackStoreFactory(Path.of(properties.getStoreFile()));
+    }
+
+    @Bean(bootstrap = Bean.Bootstrap.BACKGROUND)
+    @ConditionalOnProperty(prefix = "spring.liquibase-rollback", name = "background-prefetch")
+    @ConditionalOnSingleCandidate(DataSource.class)
+    public LiquibaseRollbackPrefetcher liquibaseRollbackPrefetcher(DataSource dataSource,
+            LiquibaseRollbackProperties properties, ObjectProvider<LiquibaseProperties> liquibaseProperties,
+            ResourceLoader resourceLoader) {
+
+        return new LiquibaseRollbackPrefetcher(dataSource, properties, liquibaseProperties.getIfAvailable(),
+                resourceLoader);
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(Endpoint.class)
+    static class LiquibaseRollbackEndpointConfiguration {
+
+        @Bean
+        @ConditionalOnAvailableEndpoint
+        public LiquibaseRollbackEndpoint liquibaseRollbackEndpoint(ApplicationContext context,
+                LiquibaseRollbackCustomizer customizer) {
+
+            return new LiquibaseRollbackEndpoint(context, customizer);
+        }
     }
 }
@@ -5,16 +5,24 @@
 
 package com.whisperinggarden.lar;
 
+import com.whisperinggarden.lar.LiquibaseRollbackProperties.BudgetExceededAction;
+import com.whisperinggarden.lar.LiquibaseRollbackProperties.CaptureMode;
+import com.whisperinggarden.lar.LiquibaseRollbackProperties.DdlProfile;
 import liquibase.ChecksumVersion;
 import liquibase.Contexts;
 import liquibase.LabelExpression;
 import liquibase.Liquibase;
 import liquibase.Scope;
-import liquibase.change.AddColumnConfig;
+import liquibase.change.Change;
 import liquibase.change.core.RawSQLChange;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
 import liquibase.changelog.RanChangeSet;
+import liquibase.changelog.visitor.AbstractChangeExecListener;
+import liquibase.changelog.visitor.ChangeExecListener;
+import liquibase.changelog.visitor.DefaultChangeExecListener;
 import liquibase.database.Database;
-import liquibase.datatype.DataTypeFactory;
+import liquibase.database.jvm.JdbcConnection;
 import liquibase.exception.DatabaseException;
 import liquibase.exception.LiquibaseException;
 import liquibase.exception.RollbackImpossibleException;
@@ -24,25 +32,27 @@ import liquibase.executor.ExecutorService;
 import liquibase.integration.spring.Customizer;
 import liquibase.sql.Sql;
 import liquibase.sqlgenerator.SqlGeneratorFactory;
-import liquibase.statement.AutoIncrementConstraint;
-import liquibase.statement.NotNullConstraint;
-import liquibase.statement.core.CreateIndexStatement;
-import liquibase.statement.core.CreateTableStatement;
 import liquibase.statement.core.DeleteStatement;
-import liquibase.statement.core.InsertStatement;
 import liquibase.statement.core.RawParameterizedSqlStatement;
-import liquibase.structure.core.Column;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 
+import java.sql.SQLException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
-import static com.whisperinggarden.lar.LiquibaseRollbackUtils.hasTable;
-import static java.util.function.Predicate.not;
+import static com.whisperinggarden.lar.LiquibaseRollbackUtils.isTimeout;
+import static com.whisperinggarden.lar.LiquibaseRollbackUtils.lockTimeoutStatement;
+import static com.whisperinggarden.lar.LiquibaseRollbackUtils.resetLockTimeoutStatement;
+import static com.whisperinggarden.lar.LiquibaseRollbackUtils.toSecondsRoundedUp;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -52,192 +62,517 @@ public class LiquibaseRollbackCustomizer implements Customizer<Liquibase> {
     public static final String COL_ID = "ID";
     public static final String COL_CHANGELOG_ID = "CHANGELOGID";
     public static final String COL_CHANGELOG_CHECKSUM = "CHANGELOGCHKSUM";
+    public static final String COL_CHANGELOG_HASH = "CHANGELOGHASH";
     public static final String COL_ROLLBACKSTMT = "ROLLBACKSTMT";
     public static final String COL_ROLLBACKSTMTORDER = "ROLLBACKSTMTORDER";
+    public static final String COL_ROLLBACKSTMTEXECUTED = "ROLLBACKSTMTEXECUTED";
+    public static final String COL_ROLLBACKTARGET = "ROLLBACKTARGET";
 
     // DATABASECHANGELOG table columns:
     public static final String COL_DBCHANGELOG_ID = "ID";
+    public static final String COL_DBCHANGELOG_AUTHOR = "AUTHOR";
+    public static final String COL_DBCHANGELOG_FILENAME = "FILENAME";
     public static final String COL_DBCHANGELOG_MD5SUM = "MD5SUM";
 
+    @Getter
     private final LiquibaseRollbackProperties properties;
 
+    @Setter
+    private Supplier<RollbackPrefetch> prefetchSupplier = () -> null;
+
+    @Setter
+    private RollbackStoreFactory rollbackStoreFactory;
+
+    @Getter
+    @Setter
+    private Contexts contexts = new Contexts();
+
+    @Getter
+    @Setter
+    private LabelExpression labelExpression = new LabelExpression();
+
+    @Setter
+    private ChangeExecListener changeExecListener;
+
     @Override
     public void customize(Liquibase liquibase) {
+        customize(liquibase, contexts, labelExpression);
+    }
+
+    public void customize(Liquibase liquibase, Contexts contexts, LabelExpression labelExpression) {
         log.info("Starting database auto-rollback processing");
 
-        createRollbackTable(liquibase.getDatabase());
-        rollbackUnexpectedChangeSets(liquibase);
-        persistRollbackStatements(liquibase);
+        var run = newRun(contexts, labelExpression);
+        var phaseStart = System.nanoTime();
+        var prefetch = prefetchSupplier.get();
+        var cacheKey = properties.isCacheResults()
+                ? RollbackRunCache.computeKey(liquibase, properties, contexts, labelExpression)
+                : null;
+        if (RollbackRunCache.isCompleted(cacheKey)) {
+            log.info("Database auto-rollback processing skipped - nothing changed since an earlier run in this JVM");
+            return;
+        }
+        if (prefetch != null && prefetch.matches(liquibase.getDatabase())) {
+            log.info("Using prefetched rollback data");
+            run.setPrefetch(prefetch);
+        }
+        prepareStorage(liquibase.getDatabase(), run);
+        run.setPrepareDuration(Duration.ofNanos(System.nanoTime() - phaseStart));
+
+        phaseStart = System.nanoTime();
+        rollbackUnexpectedChangeSets(liquibase, run);
+        run.setRollbackDuration(Duration.ofNanos(System.nanoTime() - phaseStart));
+
+        phaseStart = System.nanoTime();
+        captureRollbackStatements(liquibase, run);
+        run.setPersistDuration(Duration.ofNanos(System.nanoTime() - phaseStart));
+
+        if (properties.isHistoryEnabled()) {
+            new RollbackRunHistory(properties).write(liquibase.getDatabase(), run);
+        }
+
+        // a run that found nothing to do leaves the database as it was, so the same state can be skipped next time
+        if (run.getUnexpectedChangeSets() == 0 && run.getUnrunChangeSets() == 0
+                && properties.getCaptureMode() == CaptureMode.EAGER) {
+            RollbackRunCache.markCompleted(cacheKey, liquibase);
+        }
 
-        log.info("Database auto-rollback processing completed successfully");
+        log.info("Database auto-rollback processing completed successfully in {} ms", run.getElapsed().toMillis());
     }
 
-    protected void createRollbackTable(Database db) {
-        var tableName = properties.getDbRollbackTableName();
-        if (hasTable(db, tableName)) {
-            return;
+    protected void prepareStorage(Database db, RollbackRun run) {
+        // also when the prefetch has seen the table - a table written by an older version still needs migrating
+        createRollbackTable(db, run);
+        if (properties.isPreImageCapture()) {
+            new PreImageCapture(properties).initialize(db);
+        }
+    }
+
+    protected void captureRollbackStatements(Liquibase liquibase, RollbackRun run) {
+        var onExecute = properties.getCaptureMode() == CaptureMode.ON_EXECUTE;
+        if (onExecute || properties.isPreImageCapture()) {
+            if (onExecute) {
+                log.info("Rollback statements will be stored as changesets are executed");
+            }
+            ChangeExecListener listener = new RollbackCaptureListener(onExecute, run);
+            // Liquibase holds a single listener, so an application listener is chained with ours
+            liquibase.setChangeExecListener(changeExecListener != null
+                    ? new DefaultChangeExecListener(listener, changeExecListener)
+                    : listener);
+        } else if (changeExecListener != null) {
+            liquibase.setChangeExecListener(changeExecListener);
+        }
+        if (!onExecute) {
+            persistRollbackStatements(liquibase, run);
         }
+    }
 
-        var executor = getExecutor(db);
-        var intType = DataTypeFactory.getInstance().fromDescription("int", db);
-        var varchar255Type = DataTypeFactory.getInstance().fromDescription("varchar(255)", db);
-        var varchar100Type = DataTypeFactory.getInstance().fromDescription("varchar(100)", db);
-        var varchar4KType = DataTypeFactory.getInstance()
-                .fromDescription("varchar(%d)".formatted(properties.getRollbackStatementMaxLength()), db);
+    protected void createRollbackTable(Database db) {
+        getRollbackStore(db).initialize();
+    }
 
-        log.info("Creating {} table", tableName);
+    // the run's own store, so it is not migrated again later inside a changeset transaction
+    private void createRollbackTable(Database db, RollbackRun run) {
+        getRollbackStore(db, run).initialize();
+    }
 
-        try {
-            executor.execute(new CreateTableStatement(db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(), tableName)
-                    .addPrimaryKeyColumn(COL_ID, intType, null, null, null, new AutoIncrementConstraint(COL_ID))
-                    .addColumn(COL_CHANGELOG_ID, varchar255Type, new NotNullConstraint(COL_CHANGELOG_ID))
-                    .addColumn(COL_CHANGELOG_CHECKSUM, varchar100Type, new NotNullConstraint(COL_CHANGELOG_CHECKSUM))
-                    .addColumn(COL_ROLLBACKSTMT, varchar4KType, new NotNullConstraint(COL_ROLLBACKSTMT))
-                    .addColumn(COL_ROLLBACKSTMTORDER, intType, new NotNullConstraint(COL_ROLLBACKSTMTORDER)));
-
-            executor.execute(new CreateIndexStatement("IDX_RB_CHANGELOGIDSUMORD",
-                    db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(), tableName, true, null,
-                    new AddColumnConfig(new Column(COL_CHANGELOG_ID)),
-                    new AddColumnConfig(new Column(COL_CHANGELOG_CHECKSUM)),
-                    new AddColumnConfig(new Column(COL_ROLLBACKSTMTORDER))));
+    protected RollbackStore getRollbackStore(Database db) {
+        if (rollbackStoreFactory != null) {
+            return rollbackStoreFactory.create(db);
+        }
+        if (properties.isIndexedStore() && db.getConnection() instanceof JdbcConnection) {
+            return new IndexedRollbackStore(db, properties);
+        }
+        return new JdbcRollbackStore(db, properties);
+    }
 
-            db.commit();
-        } catch (DatabaseException e) {
-            throw new UnexpectedLiquibaseException("Unable to create the rollback table", e);
+    // one store per run, so an indexed store is built once and never shared between runs
+    private RollbackStore getRollbackStore(Database db, RollbackRun run) {
+        if (run.getRollbackStore() == null) {
+            run.setRollbackStore(getRollbackStore(db));
         }
+        return run.getRollbackStore();
     }
 
     protected void rollbackUnexpectedChangeSets(Liquibase liquibase) {
-        var tableName = properties.getDbRollbackTableName();
-        var changeLogTableName = properties.getDbChangeLogTable();
+        rollbackUnexpectedChangeSets(liquibase, newRun(contexts, labelExpression));
+    }
+
+    protected void rollbackUnexpectedChangeSets(Liquibase liquibase, RollbackRun run) {
         var db = liquibase.getDatabase();
-        var executor = getExecutor(db);
 
+        List<RanChangeSet> changeSets;
         try {
-            liquibase.listUnexpectedChangeSets(new Contexts(), new LabelExpression())
+            changeSets = liquibase.listUnexpectedChangeSets(run.getContexts(), run.getLabelExpression())
                     .stream()
                     .sorted(Comparator.comparingInt(RanChangeSet::getOrderExecuted).reversed())
-                    .forEach(changeSet -> {
-                        log.info("Unexpected changeset found - {}", changeSet);
-                        if (changeSet.getLastCheckSum() == null) {
-                            log.info("There is no checksum for {} - skipping rollback", changeSet.getId());
-                        }
-
-                        try {
-                            var rows = executor.queryForList(new SelectStatement(db.getLiquibaseCatalogName(),
-                                    db.getLiquibaseSchemaName(), tableName)
-                                    .addColumnsToSelect(COL_ROLLBACKSTMT)
-                                    .setWhere(":name = :value AND :name = :value")
-                                    .addWhereColumnNames(COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM)
-                                    .addWhereParameters(changeSet.getId(), changeSet.getLastCheckSum().toString())
-                                    .setOrderBy(COL_ROLLBACKSTMTORDER));
-                            if (!rows.isEmpty()) {
-                                rows.forEach(row -> {
-                                    log.info("Executing rollback statement for {}", changeSet.getId());
-                                    try {
-                                        executor.execute(new RawParameterizedSqlStatement(
-                                                row.get(COL_ROLLBACKSTMT).toString()));
-                                    } catch (DatabaseException e) {
-                                        throw new RuntimeException(e);
-                                    }
-                                });
-
-                                log.info("Deleting changeset {} record from changelog table", changeSet.getId());
-                                logUpdatedRecords("deleted", executor.update(new DeleteStatement(
-                                        db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(), changeLogTableName)
-                                        .setWhere(":name = :value AND :name = :value")
-                                        .addWhereColumnName(COL_DBCHANGELOG_ID)
-                                        .addWhereColumnName(COL_DBCHANGELOG_MD5SUM)
-                                        .addWhereParameters(changeSet.getId(), changeSet.getLastCheckSum().toString())));
-
-                                log.info("Deleting rolled back statements for the changeset {}", changeSet.getId());
-                                logUpdatedRecords("deleted", executor.update(new DeleteStatement(
-                                        db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(), tableName)
-                                        .setWhere(":name = :value AND :name = :value")
-                                        .addWhereColumnName(COL_CHANGELOG_ID)
-                                        .addWhereColumnName(COL_CHANGELOG_CHECKSUM)
-                                        .addWhereParameters(changeSet.getId(), changeSet.getLastCheckSum().toString())));
-
-                                db.commit();
-                            } else {
-                                log.info("There is no rollback statement for changeset {} ({})",
-                                        changeSet.getId(), changeSet.getLastCheckSum().toString());
-                            }
-                        } catch (DatabaseException e) {
-                            throw new UnexpectedLiquibaseException("Unable to rollback changesets - " + e.getMessage(), e);
-                        }
-                    });
+                    .toList();
         } catch (LiquibaseException e) {
             throw new UnexpectedLiquibaseException("Unable to list unexpected changesets - " + e.getMessage(), e);
         }
+        run.addUnexpectedChangeSets(changeSets.size());
+        if (changeSets.isEmpty()) {
+            return;
+        }
+
+        var plan = new ArrayList<PlannedRollback>();
+        for (var changeSet : changeSets) {
+            log.info("Unexpected changeset found - {}", changeSet);
+            if (changeSet.getLastCheckSum() == null) {
+                log.info("There is no checksum for {} - skipping rollback", changeSet.getId());
+                continue;
+            }
+
+            var statements = fetchRollbackStatements(db, changeSet, run);
+            if (statements.isEmpty()) {
+                log.info("There is no rollback statement for changeset {} ({})",
+                        changeSet.getId(), changeSet.getLastCheckSum().toString());
+                continue;
+            }
+            var executed = getRollbackStore(db, run)
+                    .getExecutedCount(changeSet.getId(), changeSet.getLastCheckSum().toString());
+            plan.add(new PlannedRollback(changeSet, statements, executed));
+        }
+
+        var superseded = new int[plan.size()];
+        Arrays.fill(superseded, RollbackPlanOptimizer.NOT_SUPERSEDED);
+        if (properties.isCoalesceStatements()) {
+            superseded = RollbackPlanOptimizer.findSuperseded(plan.stream()
+                    .map(planned -> fetchTargets(db, planned, run))
+                    .toList());
+        }
+
+        applyLockTimeout(db, properties.getLockTimeout());
+        try {
+            for (var i = 0; i < plan.size(); i++) {
+                if (superseded[i] != RollbackPlanOptimizer.NOT_SUPERSEDED) {
+                    log.info("Skipping rollback statements of the changeset {} - superseded by a DROP TABLE "
+                            + "of the changeset {}", plan.get(i).changeSet().getId(),
+                            plan.get(superseded[i]).changeSet().getId());
+                    continue;
+                }
+
+                var completed = new ArrayList<RanChangeSet>();
+                completed.add(plan.get(i).changeSet());
+                for (var k = 0; k < i; k++) {
+                    if (superseded[k] == i) {
+                        completed.add(plan.get(k).changeSet());
+                    }
+                }
+                if (!rollbackChangeSet(db, plan.get(i), completed, run)) {
+                    break;
+                }
+            }
+        } finally {
+            applyLockTimeout(db, null);
+        }
+    }
+
+    private boolean rollbackChangeSet(Database db, PlannedRollback planned, List<RanChangeSet> completed,
+            RollbackRun run) {
+
+        var changeSet = planned.changeSet();
+        var checksum = changeSet.getLastCheckSum().toString();
+        if (planned.executed() > 0) {
+            log.info("Resuming rollback of the changeset {} after {} of {} already executed statements",
+                    changeSet.getId(), planned.executed(), planned.statements().size());
+        }
+
+        try {
+            for (var stmtOrder = planned.executed() + 1; stmtOrder <= planned.statements().size(); stmtOrder++) {
+                var sql = planned.statements().get(stmtOrder - 1);
+                if (run.isBudgetExhausted()) {
+                    return handleBlockedStatement(db, changeSet, stmtOrder, sql,
+                            "the startup budget of %s is exhausted".formatted(run.getBudget()), null);
+                }
+
+                log.info("Executing rollback statement for {}", changeSet.getId());
+                var executedOrder = stmtOrder;
+                try {
+                    var stmtStart = System.nanoTime();
+                    executeRollbackStatement(db, sql, run.nextStatementTimeout(),
+                            () -> getRollbackStore(db, run).markExecuted(changeSet.getId(), checksum, executedOrder));
+                    run.recordExecutedStatement(changeSet.getId(), stmtOrder, System.nanoTime() - stmtStart);
+                } catch (DatabaseException e) {
+                    if (!isTimeout(e)) {
+                        throw e;
+                    }
+                    return handleBlockedStatement(db, changeSet, stmtOrder, sql, "the statement timed out", e);
+                }
+            }
+
+            // superseded changesets are completed together with the changeset that drops their table
+            for (var rolledBack : completed) {
+                deleteRolledBackChangeSet(db, rolledBack, run);
+            }
+
+            db.commit();
+            return true;
+        } catch (DatabaseException e) {
+            throw new UnexpectedLiquibaseException("Unable to rollback changesets - " + e.getMessage(), e);
+        }
+    }
+
+    private void deleteRolledBackChangeSet(Database db, RanChangeSet changeSet, RollbackRun run)
+            throws DatabaseException {
+
+        var checksum = changeSet.getLastCheckSum().toString();
+
+        log.info("Deleting changeset {} record from changelog table", changeSet.getId());
+        logUpdatedRecords("deleted", getExecutor(db).update(new DeleteStatement(
+                db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(), properties.getDbChangeLogTable())
+                .setWhere(":name = :value AND :name = :value")
+                .addWhereColumnName(COL_DBCHANGELOG_ID)
+                .addWhereColumnName(COL_DBCHANGELOG_MD5SUM)
+                .addWhereParameters(changeSet.getId(), checksum)));
+
+        log.info("Deleting rolled back statements for the changeset {}", changeSet.getId());
+        getRollbackStore(db, run).delete(changeSet.getId(), checksum);
+    }
+
+    // statements stored by earlier versions have no targets and are classified from their SQL
+    private List<RollbackPlanOptimizer.Target> fetchTargets(Database db, PlannedRollback planned, RollbackRun run) {
+        var targets = getRollbackStore(db, run).fetchTargets(planned.changeSet().getId(),
+                planned.changeSet().getLastCheckSum().toString());
+        return targets != null
+                ? RollbackPlanOptimizer.parseTargets(targets)
+                : RollbackPlanOptimizer.classify(planned.statements());
+    }
+
+    private List<String> fetchRollbackStatements(Database db, RanChangeSet changeSet, RollbackRun run) {
+        var checksum = changeSet.getLastCheckSum().toString();
+        if (run.getPrefetch() != null) {
+            var prefetched = run.getPrefetch().findRollbackStatements(changeSet.getId(), checksum);
+            if (prefetched.isPresent()) {
+                return prefetched.get();
+            }
+        }
+        return getRollbackStore(db, run).fetch(changeSet.getId(), checksum);
+    }
+
+    private boolean handleBlockedStatement(Database db, RanChangeSet changeSet, int stmtOrder, String sql,
+            String reason, Exception cause) throws DatabaseException {
+
+        var message = "Rollback of changeset %s was blocked on statement #%d [%s] - %s"
+                .formatted(changeSet.getId(), stmtOrder, sql, reason);
+        db.rollback();
+        if (properties.getBudgetExceededAction() == BudgetExceededAction.DEFER) {
+            log.warn("{}; the remaining rollbacks are deferred until the next startup", message);
+            return false;
+        }
+        throw new UnexpectedLiquibaseException(message, cause);
+    }
+
+    // used by the rehearsal, which runs the statements the same way but has nothing to checkpoint
+    protected void executeRollbackStatement(Database db, String sql) throws DatabaseException {
+        executeRollbackStatement(db, sql, null, () -> { });
+    }
+
+    // some databases commit DDL implicitly even when they report transactional DDL (e.g. H2), so every statement
+    // is checkpointed and committed on its own
+    private void executeRollbackStatement(Database db, String sql, Duration timeout, Runnable checkpoint)
+            throws DatabaseException {
+
+        if (OnlineDdlRewriter.requiresAutoCommit(db, sql)) {
+            log.info("Executing the rollback statement outside of a transaction");
+            db.commit();
+            db.getConnection().setAutoCommit(true);
+            try {
+                executeStatement(db, sql, timeout);
+                // written right after the statement so a resume never repeats it
+                checkpoint.run();
+            } finally {
+                db.getConnection().setAutoCommit(false);
+            }
+            return;
+        }
+
+        if (PreImageCapture.isRestoreStatement(sql)) {
+            new PreImageCapture(properties).restore(db,
+                    sql.substring(PreImageCapture.RESTORE_PREFIX.length()).trim());
+        } else {
+            executeStatement(db, sql, timeout);
+        }
+        checkpoint.run();
+        db.commit();
+    }
+
+    private void executeStatement(Database db, String sql, Duration timeout) throws DatabaseException {
+        if (timeout == null || !(db.getConnection() instanceof JdbcConnection connection)) {
+            getExecutor(db).execute(new RawParameterizedSqlStatement(sql));
+            return;
+        }
+
+        try (var stmt = connection.getUnderlyingConnection().createStatement()) {
+            stmt.setQueryTimeout(toSecondsRoundedUp(timeout));
+            stmt.execute(sql);
+        } catch (SQLException e) {
+            throw new DatabaseException(e);
+        }
+    }
+
+    private void applyLockTimeout(Database db, Duration timeout) {
+        if (properties.getLockTimeout() == null) {
+            return;
+        }
+
+        var sql = timeout != null ? lockTimeoutStatement(db, timeout) : resetLockTimeoutStatement(db);
+        if (sql == null) {
+            log.debug("Lock timeouts are not supported for {}", db.getShortName());
+            return;
+        }
+
+        try {
+            getExecutor(db).execute(new RawParameterizedSqlStatement(sql));
+        } catch (DatabaseException e) {
+            log.warn("Unable to apply the lock timeout - {}", e.getMessage());
+        }
     }
 
     protected void persistRollbackStatements(Liquibase liquibase) {
-        var tableName = properties.getDbRollbackTableName();
+        persistRollbackStatements(liquibase, newRun(contexts, labelExpression));
+    }
+
+    protected void persistRollbackStatements(Liquibase liquibase, RollbackRun run) {
         var db = liquibase.getDatabase();
-        var sqlGenerator = SqlGeneratorFactory.getInstance();
+        var store = getRollbackStore(db, run);
 
         try {
-            liquibase.listUnrunChangeSets(new Contexts(), new LabelExpression())
-                    .forEach(changeSet -> {
-                        log.info("Processing unrun changeset {}", changeSet.getId());
-                        var checksum = changeSet.generateCheckSum(ChecksumVersion.latest()).toString();
-
-                        if (changeSet.hasCustomRollbackChanges()) {
-                            changeSet.getRollback().getChanges().forEach(rollbackChange ->
-                                insertRollbackStatements(db, tableName, changeSet.getId(), checksum,
-                                        sqlGenerator.generateSql(rollbackChange, db)));
-                        } else if (!changeSet.getFilePath().toLowerCase().endsWith(".sql")) {
-                            var changes = new ArrayList<>(changeSet.getChanges());
-                            Collections.reverse(changes);
-                            var sqlList = changes.stream()
-                                    .filter(not(RawSQLChange.class::isInstance))
-                                    .flatMap(change -> {
-                                        try {
-                                            return Arrays.stream(sqlGenerator.generateSql(
-                                                    change.generateRollbackStatements(db), db));
-                                        } catch (RollbackImpossibleException e) {
-                                            log.warn("Unable to generate a rollback statement for the changeset {}",
-                                                    changeSet.getId());
-                                            return Stream.empty();
-                                        }
-                                    })
-                                    .toList();
-                            insertRollbackStatements(db, tableName, changeSet.getId(), checksum,
-                                    sqlList.toArray(Sql[]::new));
-                        }
-                    });
+            var changeSets = liquibase.listUnrunChangeSets(run.getContexts(), run.getLabelExpression());
+            run.addUnrunChangeSets(changeSets.size());
+            for (var changeSet : changeSets) {
+                log.info("Processing unrun changeset {}", changeSet.getId());
+                var checksum = changeSet.generateCheckSum(ChecksumVersion.latest()).toString();
+                var sqlList = generateRollbackStatements(changeSet, db);
+                if (sqlList != null) {
+                    run.addStatementsGenerated(sqlList.size());
+                    store.put(changeSet.getId(), checksum, sqlList, generateTargets(changeSet, db));
+                    run.addStatementsInserted(sqlList.size());
+                    log.info("{} rollback statements stored for the changeset {}", sqlList.size(), changeSet.getId());
+                }
+            }
             db.commit();
         } catch (LiquibaseException e) {
             throw new UnexpectedLiquibaseException("Unable to persist rollback statements - " + e.getMessage(), e);
         }
     }
 
-    private Executor getExecutor(Database db) {
-        return Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", db);
+    protected void persistRollbackStatements(ChangeSet changeSet, Database db, RollbackRun run) {
+        var sqlList = generateRollbackStatements(changeSet, db);
+        if (sqlList == null) {
+            return;
+        }
+
+        // the listener runs inside the changeset transaction, Liquibase commits both together
+        var checksum = changeSet.generateCheckSum(ChecksumVersion.latest()).toString();
+        getRollbackStore(db, run).put(changeSet.getId(), checksum, sqlList, generateTargets(changeSet, db));
+        log.info("{} rollback statements stored for the changeset {}", sqlList.size(), changeSet.getId());
     }
 
-    private void logUpdatedRecords(String action, int count) {
-        log.info("{} {} {}", count, (count == 1 ? "record" : "records"), action);
+    protected List<String> generateRollbackStatements(ChangeSet changeSet, Database db) {
+        var sqlList = generateStandardRollbackStatements(changeSet, db);
+        if (sqlList == null || properties.getDdlProfile() != DdlProfile.ONLINE) {
+            return sqlList;
+        }
+        return sqlList.stream().flatMap(sql -> OnlineDdlRewriter.rewrite(db, sql).stream()).toList();
     }
 
-    private void insertRollbackStatements(Database db, String tableName,
-            String changeSetId, String changeSetCheckSum, Sql[] statements) {
+    private String generateTargets(ChangeSet changeSet, Database db) {
+        return RollbackPlanOptimizer.formatTargets(RollbackPlanOptimizer.targetsOf(changeSet, db));
+    }
 
-        var executor = getExecutor(db);
-        var stmtOrder = 1;
-        for (var sql : statements) {
-            try {
-                logUpdatedRecords("inserted", executor.update(new InsertStatement(
-                        db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(), tableName)
-                        .addColumnValue(COL_CHANGELOG_ID, changeSetId)
-                        .addColumnValue(COL_CHANGELOG_CHECKSUM, changeSetCheckSum)
-                        .addColumnValue(COL_ROLLBACKSTMT, sql.toSql())
-                        .addColumnValue(COL_ROLLBACKSTMTORDER, stmtOrder++)));
-            } catch (DatabaseException e) {
-                throw new UnexpectedLiquibaseException(
-                        "Unable to insert a rollback record - " + e.getMessage(), e);
+    private List<String> generateStandardRollbackStatements(ChangeSet changeSet, Database db) {
+        var sqlGenerator = SqlGeneratorFactory.getInstance();
+
+        if (changeSet.hasCustomRollbackChanges()) {
+            return changeSet.getRollback().getChanges().stream()
+                    .flatMap(rollbackChange -> Arrays.stream(sqlGenerator.generateSql(rollbackChange, db)))
+                    .map(Sql::toSql)
+                    .toList();
+        } else if (!changeSet.getFilePath().toLowerCase().endsWith(".sql")) {
+            var changes = changeSet.getChanges();
+            return IntStream.iterate(changes.size() - 1, i -> i >= 0, i -> i - 1)
+                    .filter(i -> !(changes.get(i) instanceof RawSQLChange))
+                    .boxed()
+                    .flatMap(i -> {
+                        var change = changes.get(i);
+                        // the pre-image captured right before the change ran is restored instead
+                        var captureId = PreImageCapture.captureId(changeSet, i);
+                        if (properties.isPreImageCapture() && PreImageCapture.isSupported(change)
+                                && new PreImageCapture(properties).hasCapture(db, captureId)) {
+                            return Stream.of(PreImageCapture.restoreStatement(captureId));
+                        }
+                        try {
+                            return Arrays.stream(sqlGenerator.generateSql(
+                                    change.generateRollbackStatements(db), db)).map(Sql::toSql);
+                        } catch (RollbackImpossibleException e) {
+                            log.warn("Unable to generate a rollback statement for the changeset {}",
+                                    changeSet.getId());
+                            return Stream.empty();
+                        }
+                    })
+                    .toList();
+        }
+        return null;
+    }
+
+    // stores the rollback of a changeset right after Liquibase has executed it, so nothing is generated for
+    // changesets an interrupted update never reached; also captures pre-images right before destructive changes run
+    @RequiredArgsConstructor
+    private class RollbackCaptureListener extends AbstractChangeExecListener {
+
+        private final boolean persistOnExecute;
+        private final RollbackRun run;
+
+        @Override
+        public void willRun(Change change, ChangeSet changeSet, DatabaseChangeLog changeLog, Database database) {
+            if (properties.isPreImageCapture() && PreImageCapture.isSupported(change)
+                    && !changeSet.hasCustomRollbackChanges()
+                    && !changeSet.getFilePath().toLowerCase().endsWith(".sql")) {
+                new PreImageCapture(properties).capture(change, changeSet, database);
             }
         }
+
+        @Override
+        public void ran(ChangeSet changeSet, DatabaseChangeLog databaseChangeLog, Database database,
+                ChangeSet.ExecType execType) {
+
+            if (execType != ChangeSet.ExecType.EXECUTED && execType != ChangeSet.ExecType.RERAN) {
+                return;
+            }
+            // rollbacks stored up front could not reference pre-images that did not exist yet
+            if (persistOnExecute || (properties.isPreImageCapture()
+                    && changeSet.getChanges().stream().anyMatch(PreImageCapture::isSupported))) {
+                persistRollbackStatements(changeSet, database, run);
+            }
+        }
+    }
+
+    private record PlannedRollback(RanChangeSet changeSet, List<String> statements, int executed) {
+    }
+
+    // applies the customizer with the contexts and labels of the SpringLiquibase bean it is attached to
+    record FilteredCustomizer(LiquibaseRollbackCustomizer customizer, Contexts contexts,
+            LabelExpression labelExpression) implements Customizer<Liquibase> {
+
+        @Override
+        public void customize(Liquibase liquibase) {
+            customizer.customize(liquibase, contexts, labelExpression);
+        }
+    }
+
+    RollbackRun newRun(Contexts contexts, LabelExpression labelExpression) {
+        var run = new RollbackRun(properties);
+        run.setContexts(contexts);
+        run.setLabelExpression(labelExpression);
+        return run;
+    }
+
+    private Executor getExecutor(Database db) {
+        return Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", db);
+    }
+
+    private void logUpdatedRecords(String action, int count) {
+        log.info("{} {} {}", count, (count == 1 ? "record" : "records"), action);
     }
 }
@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.Liquibase;
+import liquibase.changelog.ChangeLogHistoryServiceFactory;
+import liquibase.changelog.RanChangeSet;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.LiquibaseException;
+import liquibase.exception.UnexpectedLiquibaseException;
+import liquibase.integration.spring.SpringLiquibase;
+import liquibase.integration.spring.SpringResourceAccessor;
+import liquibase.lockservice.LockServiceFactory;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.endpoint.Access;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.context.ApplicationContext;
+import org.springframework.util.StringUtils;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@Slf4j
+@RequiredArgsConstructor
+@Endpoint(id = "liquibaserollback", defaultAccess = Access.NONE)
+public class LiquibaseRollbackEndpoint {
+
+    private final ApplicationContext context;
+    private final LiquibaseRollbackCustomizer customizer;
+
+    @ReadOperation
+    public Map<String, List<UnexpectedChangeSet>> plan() {
+        var result = new LinkedHashMap<String, List<UnexpectedChangeSet>>();
+        context.getBeansOfType(SpringLiquibase.class).forEach((beanName, springLiquibase) ->
+                result.put(beanName, withLiquibase(springLiquibase, liquibase -> {
+                    var db = liquibase.getDatabase();
+                    var store = customizer.getRollbackStore(db);
+                    return liquibase.listUnexpectedChangeSets(new Contexts(springLiquibase.getContexts()),
+                                    new LabelExpression(springLiquibase.getLabelFilter()))
+                            .stream()
+                            .sorted(Comparator.comparingInt(RanChangeSet::getOrderExecuted).reversed())
+                            .map(changeSet -> new UnexpectedChangeSet(changeSet.getId(), changeSet.getAuthor(),
+                                    String.valueOf(changeSet.getLastCheckSum()), changeSet.getOrderExecuted(),
+                                    changeSet.getLastCheckSum() == null ? 0 : store.fetch(changeSet.getId(),
+                                            changeSet.getLastCheckSum().toString()).size()))
+                            .toList();
+                })));
+        return result;
+    }
+
+    @WriteOperation
+    public Map<String, RollbackResult> rollback() {
+        var result = new LinkedHashMap<String, RollbackResult>();
+        context.getBeansOfType(SpringLiquibase.class).forEach((beanName, springLiquibase) ->
+                result.put(beanName, withLiquibase(springLiquibase, liquibase -> {
+                    var lockService = LockServiceFactory.getInstance().getLockService(liquibase.getDatabase());
+                    lockService.waitForLock();
+                    try {
+                        log.info("Running the auto-rollback of {} on demand", beanName);
+                        var run = customizer.newRun(new Contexts(springLiquibase.getContexts()),
+                                new LabelExpression(springLiquibase.getLabelFilter()));
+                        customizer.rollbackUnexpectedChangeSets(liquibase, run);
+                        return new RollbackResult(run.getUnexpectedChangeSets(), run.getStatementsExecuted(),
+                                run.getElapsed().toMillis(), RollbackRunHistory.formatSlowestStatements(run));
+                    } finally {
+                        lockService.releaseLock();
+                    }
+                })));
+        return result;
+    }
+
+    private <T> T withLiquibase(SpringLiquibase springLiquibase, LiquibaseCallback<T> callback) {
+        try (var connection = springLiquibase.getDataSource().getConnection();
+                var liquibase = new Liquibase(springLiquibase.getChangeLog(),
+                        new SpringResourceAccessor(springLiquibase.getResourceLoader()),
+                        createDatabase(springLiquibase, connection))) {
+            try {
+                return callback.apply(liquibase);
+            } finally {
+                // Liquibase caches lock and history services per Database and offers no per-database removal, so
+                // they are reset the same way Liquibase itself does after an update; closing clears the executor
+                LockServiceFactory.getInstance().resetAll();
+                ChangeLogHistoryServiceFactory.getInstance().resetAll();
+            }
+        } catch (SQLException | LiquibaseException e) {
+            throw new UnexpectedLiquibaseException("Unable to access the database - " + e.getMessage(), e);
+        }
+    }
+
+    private Database createDatabase(SpringLiquibase springLiquibase, Connection connection)
+            throws LiquibaseException {
+
+        var db = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+        if (StringUtils.hasText(springLiquibase.getDefaultSchema())) {
+            db.setDefaultSchemaName(springLiquibase.getDefaultSchema());
+        }
+        if (StringUtils.hasText(springLiquibase.getLiquibaseSchema())) {
+            db.setLiquibaseSchemaName(springLiquibase.getLiquibaseSchema());
+        }
+        if (StringUtils.hasText(springLiquibase.getLiquibaseTablespace())) {
+            db.setLiquibaseTablespaceName(springLiquibase.getLiquibaseTablespace());
+        }
+        if (StringUtils.hasText(springLiquibase.getDatabaseChangeLogTable())) {
+            db.setDatabaseChangeLogTableName(springLiquibase.getDatabaseChangeLogTable());
+        }
+        if (StringUtils.hasText(springLiquibase.getDatabaseChangeLogLockTable())) {
+            db.setDatabaseChangeLogLockTableName(springLiquibase.getDatabaseChangeLogLockTable());
+        }
+        return db;
+    }
+
+    @FunctionalInterface
+    private interface LiquibaseCallback<T> {
+
+        T apply(Liquibase liquibase) throws LiquibaseException;
+    }
+
+    public record UnexpectedChangeSet(String id, String author, String checksum, int orderExecuted,
+            int rollbackStatements) {
+    }
+
+    public record RollbackResult(int unexpectedChangeSets, int statementsExecuted, long elapsedMs,
+            String slowestStatements) {
+    }
+}
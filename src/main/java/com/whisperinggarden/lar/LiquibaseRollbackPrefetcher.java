@@ -0,0 +1,186 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import com.whisperinggarden.lar.LiquibaseRollbackProperties.RollbackStoreType;
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.Liquibase;
+import liquibase.RuntimeEnvironment;
+import liquibase.Scope;
+import liquibase.change.CheckSum;
+import liquibase.changelog.ChangeLogIterator;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.RanChangeSet;
+import liquibase.changelog.filter.ContextChangeSetFilter;
+import liquibase.changelog.filter.DbmsChangeSetFilter;
+import liquibase.changelog.filter.IgnoreChangeSetFilter;
+import liquibase.changelog.filter.LabelChangeSetFilter;
+import liquibase.changelog.visitor.ExpectedChangesVisitor;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.LiquibaseException;
+import liquibase.executor.Executor;
+import liquibase.executor.ExecutorService;
+import liquibase.integration.spring.SpringResourceAccessor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseProperties;
+import org.springframework.core.io.ResourceLoader;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_CHECKSUM;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_ID;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_DBCHANGELOG_AUTHOR;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_DBCHANGELOG_FILENAME;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_DBCHANGELOG_ID;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_DBCHANGELOG_MD5SUM;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMT;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMTORDER;
+import static com.whisperinggarden.lar.LiquibaseRollbackUtils.hasTable;
+
+/*
+ * Finds the unexpected changesets - ran, but no longer in the changelog - while the application context starts and
+ * loads their rollback statements, so the customizer doesn't have to query them one by one. The rollback table is
+ * only read here; it is migrated by the customizer.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class LiquibaseRollbackPrefetcher implements InitializingBean {
+
+    private final DataSource dataSource;
+    private final LiquibaseRollbackProperties properties;
+    private final LiquibaseProperties liquibaseProperties;
+    private final ResourceLoader resourceLoader;
+
+    private RollbackPrefetch prefetch;
+
+    @Override
+    public void afterPropertiesSet() {
+        if (properties.getStore() != RollbackStoreType.JDBC) {
+            log.debug("Rollback statements are not stored in the database - skipping rollback data prefetch");
+            return;
+        }
+        if (liquibaseProperties == null) {
+            log.debug("Liquibase is not auto-configured - skipping rollback data prefetch");
+            return;
+        }
+        if (liquibaseProperties.getUrl() != null) {
+            log.debug("Liquibase uses a dedicated connection - skipping rollback data prefetch");
+            return;
+        }
+
+        var startNanos = System.nanoTime();
+        try (var connection = dataSource.getConnection()) {
+            var db = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+            try {
+                db.setDefaultSchemaName(liquibaseProperties.getDefaultSchema());
+                db.setLiquibaseSchemaName(liquibaseProperties.getLiquibaseSchema());
+                var result = prefetch(db);
+                synchronized (this) {
+                    prefetch = result;
+                }
+                log.info("Prefetched {} rollback statements of {} unexpected changesets in {} ms",
+                        result.rollbackStatements().values().stream().mapToInt(List::size).sum(),
+                        result.rollbackStatements().size(), (System.nanoTime() - startNanos) / 1_000_000);
+            } finally {
+                Scope.getCurrentScope().getSingleton(ExecutorService.class).clearExecutor("jdbc", db);
+            }
+        } catch (SQLException | LiquibaseException | RuntimeException e) {
+            log.warn("Unable to prefetch rollback data - {}", e.getMessage());
+        }
+    }
+
+    public synchronized RollbackPrefetch takePrefetch() {
+        var result = prefetch;
+        prefetch = null;
+        return result;
+    }
+
+    protected RollbackPrefetch prefetch(Database db) throws LiquibaseException {
+        var executor = Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", db);
+        var rollbackTableExists = hasTable(db, properties.getDbRollbackTableName());
+
+        Map<ChangeSetKey, List<String>> rollbackStatements = new HashMap<>();
+        for (var changeSet : listUnexpectedChangeSets(db, executor)) {
+            if (changeSet.getLastCheckSum() == null) {
+                continue;
+            }
+            var key = new ChangeSetKey(changeSet.getId(), changeSet.getLastCheckSum().toString());
+            rollbackStatements.put(key, rollbackTableExists ? fetchRollbackStatements(db, executor, key) : List.of());
+        }
+
+        return new RollbackPrefetch(db.getConnection().getURL(), db.getLiquibaseCatalogName(),
+                db.getLiquibaseSchemaName(), rollbackStatements);
+    }
+
+    // the same filters as Liquibase.listUnexpectedChangeSets, but the ran changesets are read directly, so Liquibase's
+    // per-database history service isn't created on this thread
+    private Collection<RanChangeSet> listUnexpectedChangeSets(Database db, Executor executor)
+            throws LiquibaseException {
+
+        if (!hasTable(db, properties.getDbChangeLogTable())) {
+            return List.of();
+        }
+        var ranChangeSets = new ArrayList<RanChangeSet>();
+        executor.queryForList(new SelectStatement(db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(),
+                        properties.getDbChangeLogTable())
+                        .addColumnsToSelect(COL_DBCHANGELOG_ID, COL_DBCHANGELOG_AUTHOR, COL_DBCHANGELOG_FILENAME,
+                                COL_DBCHANGELOG_MD5SUM))
+                .forEach(row -> ranChangeSets.add(new RanChangeSet(
+                        String.valueOf(row.get(COL_DBCHANGELOG_FILENAME)),
+                        String.valueOf(row.get(COL_DBCHANGELOG_ID)),
+                        String.valueOf(row.get(COL_DBCHANGELOG_AUTHOR)),
+                        row.get(COL_DBCHANGELOG_MD5SUM) != null
+                                ? CheckSum.parse(row.get(COL_DBCHANGELOG_MD5SUM).toString())
+                                : null,
+                        null, null, ChangeSet.ExecType.EXECUTED, null, null, null, null, null)));
+        if (ranChangeSets.isEmpty()) {
+            return List.of();
+        }
+
+        var liquibase = new Liquibase(liquibaseProperties.getChangeLog(),
+                new SpringResourceAccessor(resourceLoader), db);
+        if (liquibaseProperties.getParameters() != null) {
+            liquibaseProperties.getParameters().forEach(liquibase::setChangeLogParameter);
+        }
+        var contexts = new Contexts(joined(liquibaseProperties.getContexts()));
+        var labelExpression = new LabelExpression(joined(liquibaseProperties.getLabelFilter()));
+        var visitor = new ExpectedChangesVisitor(ranChangeSets);
+        new ChangeLogIterator(liquibase.getDatabaseChangeLog(), new ContextChangeSetFilter(contexts),
+                new LabelChangeSetFilter(labelExpression), new DbmsChangeSetFilter(db), new IgnoreChangeSetFilter())
+                .run(visitor, new RuntimeEnvironment(db, contexts, labelExpression));
+        return visitor.getUnexpectedChangeSets();
+    }
+
+    private List<String> fetchRollbackStatements(Database db, Executor executor, ChangeSetKey key)
+            throws LiquibaseException {
+
+        return executor.queryForList(new SelectStatement(db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(),
+                        properties.getDbRollbackTableName())
+                        .addColumnsToSelect(COL_ROLLBACKSTMT)
+                        .setWhere(":name = :value AND :name = :value")
+                        .addWhereColumnNames(COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM)
+                        .addWhereParameters(key.changeSetId(), key.checksum())
+                        .setOrderBy(COL_ROLLBACKSTMTORDER))
+                .stream()
+                .map(row -> row.get(COL_ROLLBACKSTMT).toString())
+                .toList();
+    }
+
+    private static String joined(List<String> values) {
+        return values != null ? String.join(",", values) : null;
+    }
+}
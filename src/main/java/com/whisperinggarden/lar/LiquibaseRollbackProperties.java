@@ -9,6 +9,8 @@ import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.time.Duration;
+
 @ConfigurationProperties(prefix = "spring.liquibase-rollback", ignoreUnknownFields = false)
 @Getter
 @Setter
@@ -21,4 +23,60 @@ public class LiquibaseRollbackProperties {
     private String dbRollbackTableName = "DATABASECHANGELOGRB";
 
     private int rollbackStatementMaxLength = 4096;
+
+    private Duration statementTimeout;
+
+    private Duration lockTimeout;
+
+    private Duration startupBudget;
+
+    private BudgetExceededAction budgetExceededAction = BudgetExceededAction.FAIL;
+
+    private boolean coalesceStatements;
+
+    private CaptureMode captureMode = CaptureMode.EAGER;
+
+    private DdlProfile ddlProfile = DdlProfile.STANDARD;
+
+    private boolean preImageCapture;
+
+    private String dbPreImageTableName = "DATABASECHANGELOGRBIMG";
+
+    private int preImageChunkSize = 1000;
+
+    private boolean backgroundPrefetch;
+
+    private boolean cacheResults;
+
+    private boolean historyEnabled;
+
+    private String dbHistoryTableName = "DATABASECHANGELOGRBHIST";
+
+    private int historySlowestStatements = 5;
+
+    private RollbackStoreType store = RollbackStoreType.JDBC;
+
+    private String storeFile = ".liquibase-rollback/rollback-store.log";
+
+    private boolean indexedStore;
+
+    public enum BudgetExceededAction {
+        FAIL,
+        DEFER
+    }
+
+    public enum CaptureMode {
+        EAGER,
+        ON_EXECUTE
+    }
+
+    public enum DdlProfile {
+        STANDARD,
+        ONLINE
+    }
+
+    public enum RollbackStoreType {
+        JDBC,
+        FILE
+    }
 }
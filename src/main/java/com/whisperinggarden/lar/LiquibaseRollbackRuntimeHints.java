@@ -0,0 +1,26 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.boot.context.properties.bind.BindableRuntimeHintsRegistrar;
+
+public class LiquibaseRollbackRuntimeHints implements RuntimeHintsRegistrar {
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        // Liquibase discovers SQL generators through the ServiceLoader and instantiates them reflectively
+        hints.resources().registerPattern("META-INF/services/liquibase.sqlgenerator.SqlGenerator");
+        hints.reflection().registerType(SelectGenerator.class, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS,
+                MemberCategory.INVOKE_PUBLIC_METHODS);
+        hints.reflection().registerType(SelectStatement.class, MemberCategory.INVOKE_PUBLIC_METHODS,
+                MemberCategory.DECLARED_FIELDS);
+
+        BindableRuntimeHintsRegistrar.forTypes(LiquibaseRollbackProperties.class).registerHints(hints, classLoader);
+    }
+}
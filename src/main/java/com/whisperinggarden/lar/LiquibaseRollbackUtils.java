@@ -6,6 +6,9 @@
 package com.whisperinggarden.lar;
 
 import liquibase.database.Database;
+import liquibase.database.core.MSSQLDatabase;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.PostgresDatabase;
 import liquibase.exception.DatabaseException;
 import liquibase.exception.UnexpectedLiquibaseException;
 import liquibase.snapshot.InvalidExampleException;
@@ -14,9 +17,24 @@ import liquibase.structure.core.Schema;
 import liquibase.structure.core.Table;
 import lombok.extern.slf4j.Slf4j;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
+import java.util.Set;
+
 @Slf4j
 public class LiquibaseRollbackUtils {
 
+    // SQL states reported when a statement is cancelled or cannot acquire a lock in time
+    private static final Set<String> TIMEOUT_SQL_STATES = Set.of("57014", "55P03", "HYT00", "HYT01");
+
+    // MySQL/MariaDB (1205) and SQL Server (1222) lock timeout error codes
+    private static final Set<Integer> TIMEOUT_ERROR_CODES = Set.of(1205, 1222);
+
     public static boolean hasTable(Database database, String tableName) {
         try {
             return SnapshotGeneratorFactory.getInstance().has(
@@ -27,4 +45,56 @@ public class LiquibaseRollbackUtils {
             throw new UnexpectedLiquibaseException("Unable to verify whether the rollback table exists", e);
         }
     }
+
+    public static String lockTimeoutStatement(Database database, Duration timeout) {
+        if (database instanceof PostgresDatabase) {
+            return "SET lock_timeout = '%dms'".formatted(timeout.toMillis());
+        } else if (database instanceof MySQLDatabase) {
+            return "SET SESSION innodb_lock_wait_timeout = %d".formatted(toSecondsRoundedUp(timeout));
+        } else if (database instanceof MSSQLDatabase) {
+            return "SET LOCK_TIMEOUT %d".formatted(timeout.toMillis());
+        }
+        return null;
+    }
+
+    public static String resetLockTimeoutStatement(Database database) {
+        if (database instanceof PostgresDatabase) {
+            return "RESET lock_timeout";
+        } else if (database instanceof MySQLDatabase) {
+            return "SET SESSION innodb_lock_wait_timeout = DEFAULT";
+        } else if (database instanceof MSSQLDatabase) {
+            return "SET LOCK_TIMEOUT -1";
+        }
+        return null;
+    }
+
+    public static boolean isTimeout(Throwable throwable) {
+        for (var cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTimeoutException) {
+                return true;
+            }
+            if (cause instanceof SQLException e
+                    && (TIMEOUT_SQL_STATES.contains(e.getSQLState()) || TIMEOUT_ERROR_CODES.contains(e.getErrorCode()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static int toSecondsRoundedUp(Duration duration) {
+        return (int) Math.max(1, (duration.toMillis() + 999) / 1000);
+    }
+
+    // 64-bit key of a (changeset id, checksum) pair used by the narrow lookup index of the rollback table
+    public static long changeSetHash(String changeSetId, String checksum) {
+        try {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(changeSetId.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(checksum.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest.digest()).getLong();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.database.Database;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.PostgresDatabase;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/*
+ * Rewrites generated rollback DDL into variants that don't block reads and writes of the affected table for the whole
+ * operation. PostgreSQL index changes become CONCURRENTLY and run outside of the changeset transaction, so they must
+ * survive a retry: a concurrent build interrupted midway leaves an INVALID index behind, which IF NOT EXISTS would
+ * accept, so the index is dropped before it is built again. MySQL ALTER TABLE and index changes demand
+ * ALGORITHM=INPLACE, LOCK=NONE, so the server refuses an operation it can't do online instead of silently locking
+ * the table.
+ */
+public class OnlineDdlRewriter {
+
+    private static final Pattern PG_DROP_INDEX = Pattern.compile(
+            "^\\s*DROP\\s+INDEX\\s+(?!CONCURRENTLY\\b)(?:IF\\s+EXISTS\\s+)?", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PG_CREATE_INDEX = Pattern.compile(
+            "^\\s*CREATE\\s+(UNIQUE\\s+)?INDEX\\s+(?!CONCURRENTLY\\b)(?:IF\\s+NOT\\s+EXISTS\\s+)?",
+            Pattern.CASE_INSENSITIVE);
+    // the index name and the schema of the table, which is also the schema of the index
+    private static final Pattern PG_INDEX_NAME = Pattern.compile(
+            "^(\"?[\\w$]+\"?)\\s+ON\\s+(?:ONLY\\s+)?(?:(\"?[\\w$]+\"?)\\.)?", Pattern.CASE_INSENSITIVE);
+    private static final Pattern PG_CONCURRENTLY = Pattern.compile(
+            "^\\s*(?:CREATE\\s+(?:UNIQUE\\s+)?|DROP\\s+)INDEX\\s+CONCURRENTLY\\b", Pattern.CASE_INSENSITIVE);
+
+    private static final Pattern MYSQL_ALTER_TABLE = Pattern.compile("^\\s*ALTER\\s+TABLE\\b", Pattern.CASE_INSENSITIVE);
+    private static final Pattern MYSQL_INDEX = Pattern.compile(
+            "^\\s*(?:CREATE\\s+(?:UNIQUE\\s+)?INDEX|DROP\\s+INDEX)\\b", Pattern.CASE_INSENSITIVE);
+    // clauses that either can't run in place or already choose an algorithm
+    private static final Pattern MYSQL_NOT_ONLINE = Pattern.compile(
+            "\\b(?:FOREIGN\\s+KEY|PRIMARY\\s+KEY|MODIFY|CONVERT|PARTITION|ENGINE|ALGORITHM|LOCK)\\b",
+            Pattern.CASE_INSENSITIVE);
+
+    // one statement may become several, e.g. a PostgreSQL index build is preceded by a drop of its leftovers
+    public static List<String> rewrite(Database database, String sql) {
+        if (database instanceof PostgresDatabase) {
+            var matcher = PG_DROP_INDEX.matcher(sql);
+            if (matcher.find()) {
+                return List.of(matcher.replaceFirst("DROP INDEX CONCURRENTLY IF EXISTS "));
+            }
+            matcher = PG_CREATE_INDEX.matcher(sql);
+            if (matcher.find()) {
+                var unique = matcher.group(1) != null ? "UNIQUE " : "";
+                var rest = sql.substring(matcher.end());
+                var create = "CREATE " + unique + "INDEX CONCURRENTLY " + rest;
+                var name = PG_INDEX_NAME.matcher(rest);
+                if (!name.find()) {
+                    return List.of(create);
+                }
+                var index = name.group(2) != null ? name.group(2) + "." + name.group(1) : name.group(1);
+                return List.of("DROP INDEX CONCURRENTLY IF EXISTS " + index, create);
+            }
+        } else if (database instanceof MySQLDatabase && !MYSQL_NOT_ONLINE.matcher(sql).find()) {
+            var trimmed = sql.strip().replaceFirst(";$", "");
+            if (MYSQL_ALTER_TABLE.matcher(trimmed).find()) {
+                return List.of(trimmed + ", ALGORITHM=INPLACE, LOCK=NONE");
+            }
+            if (MYSQL_INDEX.matcher(trimmed).find()) {
+                return List.of(trimmed + " ALGORITHM=INPLACE LOCK=NONE");
+            }
+        }
+        return List.of(sql);
+    }
+
+    // PostgreSQL refuses to run concurrent index operations inside a transaction block
+    public static boolean requiresAutoCommit(Database database, String sql) {
+        return database instanceof PostgresDatabase && PG_CONCURRENTLY.matcher(sql).find();
+    }
+}
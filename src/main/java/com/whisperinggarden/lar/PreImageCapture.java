@@ -0,0 +1,568 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.ChecksumVersion;
+import liquibase.Scope;
+import liquibase.change.AddColumnConfig;
+import liquibase.change.Change;
+import liquibase.change.ColumnConfig;
+import liquibase.change.core.DeleteDataChange;
+import liquibase.change.core.DropColumnChange;
+import liquibase.change.core.DropTableChange;
+import liquibase.change.core.UpdateDataChange;
+import liquibase.changelog.ChangeSet;
+import liquibase.database.Database;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.datatype.DataTypeFactory;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.UnexpectedLiquibaseException;
+import liquibase.executor.Executor;
+import liquibase.executor.ExecutorService;
+import liquibase.snapshot.InvalidExampleException;
+import liquibase.snapshot.SnapshotGeneratorFactory;
+import liquibase.statement.AutoIncrementConstraint;
+import liquibase.statement.NotNullConstraint;
+import liquibase.statement.core.AddColumnStatement;
+import liquibase.statement.core.CreateIndexStatement;
+import liquibase.statement.core.CreateTableStatement;
+import liquibase.statement.core.SetNullableStatement;
+import liquibase.structure.core.Catalog;
+import liquibase.structure.core.Column;
+import liquibase.structure.core.Schema;
+import liquibase.structure.core.Table;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.whisperinggarden.lar.LiquibaseRollbackUtils.changeSetHash;
+import static com.whisperinggarden.lar.LiquibaseRollbackUtils.hasTable;
+import static com.whisperinggarden.lar.RollbackTableTransfer.escape;
+import static com.whisperinggarden.lar.RollbackTableTransfer.unescape;
+
+/*
+ * Makes destructive changes (dropColumn, dropTable, delete, update) rollbackable. Right before such a change runs, the
+ * affected rows are streamed into a side table as gzip compressed chunks of at most pre-image-chunk-size rows; the
+ * stored rollback of the change is a restore marker that recreates the dropped structure and replays the chunks one
+ * by one with batched statements. Chunk 0 of a capture describes the table and its columns:
+ *   table<TAB>catalog<TAB>schema<TAB>table
+ *   mode<TAB>INSERT|UPDATE<TAB>NONE|COLUMNS|TABLE
+ *   column<TAB>name<TAB>type<TAB>nullable<TAB>key<TAB>JDBC type
+ * the following chunks hold one tab separated row per line.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class PreImageCapture {
+
+    public static final String RESTORE_PREFIX = "-- liquibase-auto-rollback: restore pre-image ";
+
+    // DATABASECHANGELOGRBIMG table columns:
+    public static final String COL_ID = "ID";
+    public static final String COL_CAPTURE_ID = "CAPTUREID";
+    public static final String COL_CHUNK_NO = "CHUNKNO";
+    public static final String COL_PAYLOAD = "PAYLOAD";
+
+    private static final String NULL_VALUE = "\\N";
+
+    private static final Set<Integer> BINARY_TYPES = Set.of(Types.BINARY, Types.VARBINARY, Types.LONGVARBINARY,
+            Types.BLOB);
+
+    private final LiquibaseRollbackProperties properties;
+
+    enum Mode {
+        INSERT,
+        UPDATE
+    }
+
+    enum Structure {
+        NONE,
+        COLUMNS,
+        TABLE
+    }
+
+    record Target(String catalog, String schema, String table, Mode mode, Structure structure, List<String> columns,
+            String where) {
+    }
+
+    record CapturedColumn(String name, String type, boolean nullable, boolean key, int jdbcType) {
+    }
+
+    public static boolean isSupported(Change change) {
+        return change instanceof DropColumnChange || change instanceof DropTableChange
+                || change instanceof DeleteDataChange || change instanceof UpdateDataChange;
+    }
+
+    public static String captureId(ChangeSet changeSet, int changeIndex) {
+        var checksum = changeSet.generateCheckSum(ChecksumVersion.latest()).toString();
+        return "%016x-%d".formatted(changeSetHash(changeSet.getId(), checksum), changeIndex);
+    }
+
+    public static String restoreStatement(String captureId) {
+        return RESTORE_PREFIX + captureId;
+    }
+
+    public static boolean isRestoreStatement(String sql) {
+        return sql.startsWith(RESTORE_PREFIX);
+    }
+
+    public void initialize(Database db) {
+        var tableName = properties.getDbPreImageTableName();
+        if (hasTable(db, tableName)) {
+            return;
+        }
+
+        log.info("Creating {} table", tableName);
+
+        var executor = getExecutor(db);
+        var intType = DataTypeFactory.getInstance().fromDescription("int", db);
+        try {
+            executor.execute(new CreateTableStatement(db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(),
+                    tableName)
+                    .addPrimaryKeyColumn(COL_ID, intType, null, null, null, new AutoIncrementConstraint(COL_ID))
+                    .addColumn(COL_CAPTURE_ID, DataTypeFactory.getInstance().fromDescription("varchar(64)", db),
+                            new NotNullConstraint(COL_CAPTURE_ID))
+                    .addColumn(COL_CHUNK_NO, intType, new NotNullConstraint(COL_CHUNK_NO))
+                    .addColumn(COL_PAYLOAD, DataTypeFactory.getInstance().fromDescription("blob", db),
+                            new NotNullConstraint(COL_PAYLOAD)));
+
+            executor.execute(new CreateIndexStatement("IDX_RBIMG_CAPTUREIDCHUNK",
+                    db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(), tableName, true, null,
+                    new AddColumnConfig(new Column(COL_CAPTURE_ID)),
+                    new AddColumnConfig(new Column(COL_CHUNK_NO))));
+
+            db.commit();
+        } catch (DatabaseException e) {
+            throw new UnexpectedLiquibaseException("Unable to create the pre-image table", e);
+        }
+    }
+
+    public void capture(Change change, ChangeSet changeSet, Database db) {
+        var captureId = captureId(changeSet, changeSet.getChanges().indexOf(change));
+        try {
+            // a capture left from an earlier run of the changeset must not be restored if this one is skipped
+            deleteCapture(db, captureId);
+
+            var target = describe(change, db);
+            if (target == null) {
+                return;
+            }
+
+            var table = SnapshotGeneratorFactory.getInstance()
+                    .createSnapshot(new Table(target.catalog(), target.schema(), target.table()), db);
+            if (table == null) {
+                log.warn("Table {} not found - no pre-image captured for the changeset {}", target.table(),
+                        changeSet.getId());
+                return;
+            }
+
+            var keyColumns = table.getPrimaryKey() != null
+                    ? table.getPrimaryKey().getColumnNamesAsList()
+                    : List.<String>of();
+            if (target.mode() == Mode.UPDATE && keyColumns.isEmpty()) {
+                log.warn("Table {} has no primary key - no pre-image captured for the changeset {}", target.table(),
+                        changeSet.getId());
+                return;
+            }
+
+            var columns = new ArrayList<Column>();
+            for (var column : table.getColumns()) {
+                var key = keyColumns.stream().anyMatch(column.getName()::equalsIgnoreCase);
+                var selected = target.columns() == null
+                        || target.columns().stream().anyMatch(column.getName()::equalsIgnoreCase);
+                if (key || selected) {
+                    columns.add(column);
+                }
+            }
+
+            log.info("Capturing the pre-image of {} for the changeset {}", target.table(), changeSet.getId());
+            var rows = copyRows(db, captureId, target, columns, keyColumns);
+            log.info("{} rows captured as pre-image {}", rows, captureId);
+        } catch (DatabaseException | InvalidExampleException | SQLException | IOException e) {
+            throw new UnexpectedLiquibaseException("Unable to capture the pre-image for the changeset %s - %s"
+                    .formatted(changeSet.getId(), e.getMessage()), e);
+        }
+    }
+
+    public boolean hasCapture(Database db, String captureId) {
+        if (!hasTable(db, properties.getDbPreImageTableName())) {
+            return false;
+        }
+
+        try (var select = getConnection(db).prepareStatement("SELECT %s FROM %s WHERE %s = ? AND %s = 0"
+                .formatted(COL_CHUNK_NO, imageTable(db), COL_CAPTURE_ID, COL_CHUNK_NO))) {
+            select.setString(1, captureId);
+            try (var rs = select.executeQuery()) {
+                return rs.next();
+            }
+        } catch (DatabaseException | SQLException e) {
+            throw new UnexpectedLiquibaseException("Unable to look up the pre-image " + captureId, e);
+        }
+    }
+
+    public void restore(Database db, String captureId) throws DatabaseException {
+        var connection = getConnection(db);
+        try {
+            var metadata = readChunk(db, connection, captureId, 0);
+            if (metadata == null) {
+                throw new DatabaseException("The pre-image " + captureId + " is missing");
+            }
+
+            var catalog = nullable(metadata.get(0)[1]);
+            var schema = nullable(metadata.get(0)[2]);
+            var tableName = metadata.get(0)[3];
+            var mode = Mode.valueOf(metadata.get(1)[1]);
+            var structure = Structure.valueOf(metadata.get(1)[2]);
+            var columns = metadata.subList(2, metadata.size()).stream()
+                    .map(fields -> new CapturedColumn(fields[1], fields[2], Boolean.parseBoolean(fields[3]),
+                            Boolean.parseBoolean(fields[4]), Integer.parseInt(fields[5])))
+                    .toList();
+
+            restoreStructure(db, catalog, schema, tableName, structure, columns);
+
+            var restored = 0L;
+            try (var dml = connection.prepareStatement(restoreSql(db, catalog, schema, tableName, mode, columns));
+                    var select = connection.prepareStatement("SELECT %s FROM %s WHERE %s = ? AND %s > 0 ORDER BY %s"
+                            .formatted(COL_PAYLOAD, imageTable(db), COL_CAPTURE_ID, COL_CHUNK_NO, COL_CHUNK_NO))) {
+
+                select.setFetchSize(1);
+                select.setString(1, captureId);
+                try (var rs = select.executeQuery()) {
+                    while (rs.next()) {
+                        for (var fields : decompress(rs.getBytes(1))) {
+                            bindRow(dml, mode, columns, fields);
+                            dml.addBatch();
+                            restored++;
+                        }
+                        dml.executeBatch();
+                    }
+                }
+            }
+
+            // restored columns are added nullable, so the rows could be updated; the constraint follows the data
+            restoreNotNull(db, catalog, schema, tableName, structure, columns);
+
+            deleteCapture(db, captureId);
+            log.info("{} rows of {} restored from pre-image {}", restored, tableName, captureId);
+        } catch (SQLException | IOException e) {
+            throw new DatabaseException("Unable to restore the pre-image " + captureId + " - " + e.getMessage(), e);
+        }
+    }
+
+    private Target describe(Change change, Database db) {
+        if (change instanceof DropColumnChange dropColumn) {
+            var columns = dropColumn.getColumnName() != null
+                    ? List.of(dropColumn.getColumnName())
+                    : dropColumn.getColumns().stream().map(ColumnConfig::getName).toList();
+            return target(db, dropColumn.getCatalogName(), dropColumn.getSchemaName(), dropColumn.getTableName(),
+                    Mode.UPDATE, Structure.COLUMNS, columns, null);
+        } else if (change instanceof DropTableChange dropTable) {
+            return target(db, dropTable.getCatalogName(), dropTable.getSchemaName(), dropTable.getTableName(),
+                    Mode.INSERT, Structure.TABLE, null, null);
+        } else if (change instanceof DeleteDataChange delete) {
+            if (delete.getWhereParams() != null && !delete.getWhereParams().isEmpty()) {
+                log.warn("Parameterized where clauses are not supported - no pre-image captured for {}",
+                        delete.getTableName());
+                return null;
+            }
+            return target(db, delete.getCatalogName(), delete.getSchemaName(), delete.getTableName(),
+                    Mode.INSERT, Structure.NONE, null, delete.getWhere());
+        } else if (change instanceof UpdateDataChange update) {
+            if (update.getWhereParams() != null && !update.getWhereParams().isEmpty()) {
+                log.warn("Parameterized where clauses are not supported - no pre-image captured for {}",
+                        update.getTableName());
+                return null;
+            }
+            return target(db, update.getCatalogName(), update.getSchemaName(), update.getTableName(),
+                    Mode.UPDATE, Structure.NONE, update.getColumns().stream().map(ColumnConfig::getName).toList(),
+                    update.getWhere());
+        }
+        return null;
+    }
+
+    private static Target target(Database db, String catalog, String schema, String table, Mode mode,
+            Structure structure, List<String> columns, String where) {
+
+        return new Target(catalog != null ? db.correctObjectName(catalog, Catalog.class) : db.getDefaultCatalogName(),
+                schema != null ? db.correctObjectName(schema, Schema.class) : db.getDefaultSchemaName(),
+                db.correctObjectName(table, Table.class), mode, structure, columns, where);
+    }
+
+    private long copyRows(Database db, String captureId, Target target, List<Column> columns, List<String> keyColumns)
+            throws SQLException, IOException, DatabaseException {
+
+        var connection = getConnection(db);
+        var sql = "SELECT %s FROM %s".formatted(columns.stream()
+                        .map(column -> db.escapeColumnName(target.catalog(), target.schema(), target.table(),
+                                column.getName()))
+                        .reduce((a, b) -> a + ", " + b).orElseThrow(),
+                db.escapeTableName(target.catalog(), target.schema(), target.table()));
+        if (target.where() != null) {
+            sql += " WHERE " + target.where();
+        }
+
+        var chunkSize = properties.getPreImageChunkSize();
+        if (db instanceof MySQLDatabase && !isCursorFetchEnabled(connection.getMetaData().getDriverName(),
+                connection.getMetaData().getURL())) {
+            log.warn("MySQL Connector/J reads the whole pre-image of {} into memory, as it ignores the fetch size "
+                    + "unless useCursorFetch=true is set on the connection", target.table());
+        }
+        try (var select = connection.createStatement();
+                var insert = connection.prepareStatement("INSERT INTO %s (%s, %s, %s) VALUES (?, ?, ?)"
+                        .formatted(imageTable(db), COL_CAPTURE_ID, COL_CHUNK_NO, COL_PAYLOAD))) {
+
+            select.setFetchSize(chunkSize);
+            try (var rs = select.executeQuery(sql)) {
+                var meta = rs.getMetaData();
+                var header = new ArrayList<String[]>();
+                header.add(new String[] { "table", target.catalog(), target.schema(), target.table() });
+                header.add(new String[] { "mode", target.mode().name(), target.structure().name() });
+                for (var i = 0; i < columns.size(); i++) {
+                    var column = columns.get(i);
+                    header.add(new String[] { "column", column.getName(), String.valueOf(column.getType()),
+                            String.valueOf(!Boolean.FALSE.equals(column.isNullable())),
+                            String.valueOf(keyColumns.stream().anyMatch(column.getName()::equalsIgnoreCase)),
+                            String.valueOf(meta.getColumnType(i + 1)) });
+                }
+                writeChunk(insert, captureId, 0, header);
+
+                var rows = 0L;
+                var chunkNo = 1;
+                var chunk = new ArrayList<String[]>(chunkSize);
+                while (rs.next()) {
+                    chunk.add(readRow(rs, meta));
+                    rows++;
+                    if (chunk.size() == chunkSize) {
+                        writeChunk(insert, captureId, chunkNo++, chunk);
+                        chunk.clear();
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    writeChunk(insert, captureId, chunkNo, chunk);
+                }
+                return rows;
+            }
+        }
+    }
+
+    // MySQL Connector/J streams a result set with a fetch size only through a server-side cursor
+    static boolean isCursorFetchEnabled(String driverName, String url) {
+        return driverName == null || !driverName.startsWith("MySQL Connector")
+                || (url != null && url.toLowerCase(Locale.ROOT).contains("usecursorfetch=true"));
+    }
+
+    private static String[] readRow(ResultSet rs, ResultSetMetaData meta) throws SQLException {
+        var row = new String[meta.getColumnCount()];
+        for (var i = 0; i < row.length; i++) {
+            if (BINARY_TYPES.contains(meta.getColumnType(i + 1))) {
+                var bytes = rs.getBytes(i + 1);
+                row[i] = bytes == null ? null : Base64.getEncoder().encodeToString(bytes);
+            } else {
+                row[i] = rs.getString(i + 1);
+            }
+        }
+        return row;
+    }
+
+    private void restoreStructure(Database db, String catalog, String schema, String tableName, Structure structure,
+            List<CapturedColumn> columns) throws DatabaseException {
+
+        var executor = getExecutor(db);
+        if (structure == Structure.COLUMNS) {
+            for (var column : columns) {
+                if (!column.key()) {
+                    executor.execute(new AddColumnStatement(catalog, schema, tableName, column.name(),
+                            databaseType(db, column), null));
+                }
+            }
+        } else if (structure == Structure.TABLE) {
+            var create = new CreateTableStatement(catalog, schema, tableName);
+            for (var column : columns) {
+                var type = DataTypeFactory.getInstance().fromDescription(column.type(), db);
+                if (column.key()) {
+                    create.addPrimaryKeyColumn(column.name(), type, null, null, null);
+                } else if (column.nullable()) {
+                    create.addColumn(column.name(), type);
+                } else {
+                    create.addColumn(column.name(), type, new NotNullConstraint(column.name()));
+                }
+            }
+            executor.execute(create);
+        }
+    }
+
+    private void restoreNotNull(Database db, String catalog, String schema, String tableName, Structure structure,
+            List<CapturedColumn> columns) throws DatabaseException {
+
+        if (structure != Structure.COLUMNS) {
+            return;
+        }
+        var executor = getExecutor(db);
+        for (var column : columns) {
+            if (!column.key() && !column.nullable()) {
+                executor.execute(new SetNullableStatement(catalog, schema, tableName, column.name(),
+                        databaseType(db, column), false));
+            }
+        }
+    }
+
+    // the captured type is the snapshot's description, which is not necessarily valid DDL for the database
+    private static String databaseType(Database db, CapturedColumn column) {
+        return DataTypeFactory.getInstance().fromDescription(column.type(), db).toDatabaseDataType(db).toString();
+    }
+
+    private static String restoreSql(Database db, String catalog, String schema, String tableName, Mode mode,
+            List<CapturedColumn> columns) {
+
+        var table = db.escapeTableName(catalog, schema, tableName);
+        if (mode == Mode.INSERT) {
+            return "INSERT INTO %s (%s) VALUES (%s)".formatted(table,
+                    String.join(", ", columns.stream()
+                            .map(column -> db.escapeColumnName(catalog, schema, tableName, column.name())).toList()),
+                    String.join(", ", columns.stream().map(column -> "?").toList()));
+        }
+        return "UPDATE %s SET %s WHERE %s".formatted(table,
+                String.join(", ", columns.stream().filter(column -> !column.key())
+                        .map(column -> db.escapeColumnName(catalog, schema, tableName, column.name()) + " = ?")
+                        .toList()),
+                String.join(" AND ", columns.stream().filter(CapturedColumn::key)
+                        .map(column -> db.escapeColumnName(catalog, schema, tableName, column.name()) + " = ?")
+                        .toList()));
+    }
+
+    private static void bindRow(PreparedStatement dml, Mode mode, List<CapturedColumn> columns, String[] fields)
+            throws SQLException {
+
+        var index = 1;
+        if (mode == Mode.INSERT) {
+            for (var i = 0; i < columns.size(); i++) {
+                bind(dml, index++, columns.get(i), fields[i]);
+            }
+            return;
+        }
+        for (var i = 0; i < columns.size(); i++) {
+            if (!columns.get(i).key()) {
+                bind(dml, index++, columns.get(i), fields[i]);
+            }
+        }
+        for (var i = 0; i < columns.size(); i++) {
+            if (columns.get(i).key()) {
+                bind(dml, index++, columns.get(i), fields[i]);
+            }
+        }
+    }
+
+    private static void bind(PreparedStatement dml, int index, CapturedColumn column, String value)
+            throws SQLException {
+
+        if (value == null) {
+            dml.setNull(index, column.jdbcType());
+        } else if (BINARY_TYPES.contains(column.jdbcType())) {
+            dml.setBytes(index, Base64.getDecoder().decode(value));
+        } else {
+            dml.setObject(index, value, column.jdbcType());
+        }
+    }
+
+    private static void writeChunk(PreparedStatement insert, String captureId, int chunkNo, List<String[]> lines)
+            throws SQLException, IOException {
+
+        var bytes = new ByteArrayOutputStream();
+        try (var out = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(bytes),
+                StandardCharsets.UTF_8))) {
+            for (var fields : lines) {
+                var encoded = new String[fields.length];
+                for (var i = 0; i < fields.length; i++) {
+                    encoded[i] = fields[i] == null ? NULL_VALUE : escape(fields[i]);
+                }
+                out.write(String.join("\t", encoded));
+                out.newLine();
+            }
+        }
+        insert.setString(1, captureId);
+        insert.setInt(2, chunkNo);
+        insert.setBytes(3, bytes.toByteArray());
+        insert.executeUpdate();
+    }
+
+    private List<String[]> readChunk(Database db, Connection connection, String captureId, int chunkNo)
+            throws SQLException, IOException {
+
+        try (var select = connection.prepareStatement("SELECT %s FROM %s WHERE %s = ? AND %s = ?"
+                .formatted(COL_PAYLOAD, imageTable(db), COL_CAPTURE_ID, COL_CHUNK_NO))) {
+            select.setString(1, captureId);
+            select.setInt(2, chunkNo);
+            try (var rs = select.executeQuery()) {
+                return rs.next() ? decompress(rs.getBytes(1)) : null;
+            }
+        }
+    }
+
+    private static List<String[]> decompress(byte[] payload) throws IOException {
+        var lines = new ArrayList<String[]>();
+        try (var in = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(payload)), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                var fields = line.split("\t", -1);
+                for (var i = 0; i < fields.length; i++) {
+                    fields[i] = NULL_VALUE.equals(fields[i]) ? null : unescape(fields[i]);
+                }
+                lines.add(fields);
+            }
+        }
+        return lines;
+    }
+
+    private void deleteCapture(Database db, String captureId) throws SQLException, DatabaseException {
+        try (var delete = getConnection(db).prepareStatement("DELETE FROM %s WHERE %s = ?"
+                .formatted(imageTable(db), COL_CAPTURE_ID))) {
+            delete.setString(1, captureId);
+            delete.executeUpdate();
+        }
+    }
+
+    private String imageTable(Database db) {
+        return db.escapeTableName(db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(),
+                properties.getDbPreImageTableName());
+    }
+
+    private static String nullable(String value) {
+        return value == null || value.isEmpty() ? null : value;
+    }
+
+    private static Connection getConnection(Database db) throws DatabaseException {
+        if (db.getConnection() instanceof JdbcConnection connection) {
+            return connection.getUnderlyingConnection();
+        }
+        throw new DatabaseException("Pre-images require a JDBC connection");
+    }
+
+    private static Executor getExecutor(Database db) {
+        return Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", db);
+    }
+}
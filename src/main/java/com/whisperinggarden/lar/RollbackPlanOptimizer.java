@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.change.Change;
+import liquibase.change.core.AbstractModifyDataChange;
+import liquibase.change.core.AddColumnChange;
+import liquibase.change.core.AddDefaultValueChange;
+import liquibase.change.core.AddForeignKeyConstraintChange;
+import liquibase.change.core.AddNotNullConstraintChange;
+import liquibase.change.core.AddPrimaryKeyChange;
+import liquibase.change.core.AddUniqueConstraintChange;
+import liquibase.change.core.CreateIndexChange;
+import liquibase.change.core.CreateTableChange;
+import liquibase.change.core.DropColumnChange;
+import liquibase.change.core.DropDefaultValueChange;
+import liquibase.change.core.DropForeignKeyConstraintChange;
+import liquibase.change.core.DropIndexChange;
+import liquibase.change.core.DropNotNullConstraintChange;
+import liquibase.change.core.DropPrimaryKeyChange;
+import liquibase.change.core.DropTableChange;
+import liquibase.change.core.DropUniqueConstraintChange;
+import liquibase.change.core.InsertDataChange;
+import liquibase.change.core.RawSQLChange;
+import liquibase.change.core.RenameColumnChange;
+import liquibase.changelog.ChangeSet;
+import liquibase.database.Database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/*
+ * Finds changesets in an ordered rollback plan whose statements only touch a table that a later changeset of the
+ * same plan drops anyway. Such changesets can be skipped: the later DROP TABLE makes their effect invisible.
+ * The analysis is deliberately conservative - any statement in between that can't be attributed to a table, drops
+ * or renames a table, or touches the dropped table keeps the earlier changesets in the plan.
+ *
+ * The tables are taken from the changeset's Change objects when the rollback is stored (targetsOf), since generated
+ * SQL often doesn't name the table (e.g. DROP INDEX on H2, PostgreSQL and Oracle). Statements stored without
+ * targets are classified from their SQL.
+ */
+public class RollbackPlanOptimizer {
+
+    public static final int NOT_SUPERSEDED = -1;
+
+    private static final String NAME = "((?:[`\"\\[]?[\\w$]+[`\"\\]]?\\.)*[`\"\\[]?[\\w$]+[`\"\\]]?)";
+
+    private static final Pattern DROP_TABLE = Pattern.compile(
+            "^\\s*DROP\\s+TABLE\\s+(?:IF\\s+EXISTS\\s+)?" + NAME, Pattern.CASE_INSENSITIVE);
+    // table renames only - column renames (ALTER TABLE t ALTER COLUMN a RENAME TO b on H2) modify the table
+    private static final Pattern RENAME = Pattern.compile(
+            "^\\s*(?:RENAME\\s+TABLE\\b|ALTER\\s+TABLE\\s+(?:IF\\s+EXISTS\\s+)?" + NAME + "\\s+RENAME\\s+TO\\b"
+                    + "|EXEC\\w*\\s+sp_rename\\b)",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern SP_RENAME_COLUMN = Pattern.compile(
+            "^\\s*EXEC\\w*\\s+sp_rename\\s+'" + NAME + "\\.[^.']+'\\s*,\\s*'[^']*'\\s*,\\s*'COLUMN'",
+            Pattern.CASE_INSENSITIVE);
+    // MSSQL drops a column's default constraint through dynamic SQL before dropping the column
+    private static final Pattern MSSQL_DROP_DEFAULT = Pattern.compile(
+            "^\\s*DECLARE\\s+@sql\\b.*?N'ALTER\\s+TABLE\\s+" + NAME + "\\s+DROP\\s+CONSTRAINT\\s",
+            Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern ALTER_TABLE = Pattern.compile(
+            "^\\s*ALTER\\s+TABLE\\s+(?:IF\\s+EXISTS\\s+)?(?:ONLY\\s+)?" + NAME, Pattern.CASE_INSENSITIVE);
+    private static final Pattern CREATE_INDEX = Pattern.compile(
+            "^\\s*CREATE\\s+(?:UNIQUE\\s+)?INDEX\\s+\\S+\\s+ON\\s+" + NAME, Pattern.CASE_INSENSITIVE);
+    private static final Pattern DROP_INDEX_ON = Pattern.compile(
+            "^\\s*DROP\\s+INDEX\\s+\\S+\\s+ON\\s+" + NAME, Pattern.CASE_INSENSITIVE);
+    private static final Pattern DML = Pattern.compile(
+            "^\\s*(?:INSERT\\s+INTO|DELETE\\s+FROM|UPDATE)\\s+" + NAME, Pattern.CASE_INSENSITIVE);
+
+    enum Kind {
+        DROP_TABLE,
+        MODIFY,
+        BARRIER
+    }
+
+    record Target(Kind kind, String table) {
+    }
+
+    // returns, for every changeset of the plan, the index of the later changeset whose DROP TABLE supersedes it
+    public static int[] findSupersededChangeSets(List<List<String>> plan) {
+        return findSuperseded(plan.stream().map(RollbackPlanOptimizer::classify).toList());
+    }
+
+    static int[] findSuperseded(List<List<Target>> targets) {
+        var superseded = new int[targets.size()];
+        Arrays.fill(superseded, NOT_SUPERSEDED);
+
+        for (var i = targets.size() - 1; i >= 0; i--) {
+            var table = singleModifiedTable(targets.get(i));
+            if (table == null) {
+                continue;
+            }
+            superseded[i] = findDrop(targets, superseded, i, table);
+        }
+        return superseded;
+    }
+
+    private static int findDrop(List<List<Target>> targets, int[] superseded, int from, String table) {
+        for (var k = from + 1; k < targets.size(); k++) {
+            var alsoSuperseded = superseded[k] != NOT_SUPERSEDED && table.equals(singleModifiedTable(targets.get(k)));
+            if (alsoSuperseded) {
+                continue;
+            }
+            for (var target : targets.get(k)) {
+                if (target.kind() == Kind.DROP_TABLE && table.equals(target.table())) {
+                    return k;
+                }
+                if (target.kind() != Kind.MODIFY || table.equals(target.table())) {
+                    return NOT_SUPERSEDED;
+                }
+            }
+        }
+        return NOT_SUPERSEDED;
+    }
+
+    private static String singleModifiedTable(List<Target> targets) {
+        String table = null;
+        for (var target : targets) {
+            if (target.kind() != Kind.MODIFY || (table != null && !table.equals(target.table()))) {
+                return null;
+            }
+            table = target.table();
+        }
+        return table;
+    }
+
+    static List<Target> classify(List<String> statements) {
+        return statements.stream().map(RollbackPlanOptimizer::classify).toList();
+    }
+
+    // the tables the changeset's rollback touches, in the order the rollback runs
+    static List<Target> targetsOf(ChangeSet changeSet, Database db) {
+        var targets = new ArrayList<Target>();
+        if (changeSet.hasCustomRollbackChanges()) {
+            changeSet.getRollback().getChanges().forEach(change -> targets.add(rollbackChangeTarget(change, db)));
+        } else {
+            var changes = changeSet.getChanges();
+            for (var i = changes.size() - 1; i >= 0; i--) {
+                // raw SQL gets no generated rollback, see LiquibaseRollbackCustomizer
+                if (!(changes.get(i) instanceof RawSQLChange)) {
+                    targets.add(inverseTarget(changes.get(i), db));
+                }
+            }
+        }
+        return targets;
+    }
+
+    // the target of the statements generated to undo the change
+    private static Target inverseTarget(Change change, Database db) {
+        if (change instanceof CreateTableChange c) {
+            return target(Kind.DROP_TABLE, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof AddColumnChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof RenameColumnChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof CreateIndexChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof AddNotNullConstraintChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof AddDefaultValueChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof AddUniqueConstraintChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof AddPrimaryKeyChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof AddForeignKeyConstraintChange c) {
+            return target(Kind.MODIFY, c.getBaseTableSchemaName(), c.getBaseTableName(), db);
+        } else if (change instanceof InsertDataChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof DropColumnChange c) {
+            // restored from a pre-image
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof AbstractModifyDataChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        }
+        return new Target(Kind.BARRIER, null);
+    }
+
+    private static Target rollbackChangeTarget(Change change, Database db) {
+        if (change instanceof DropTableChange c) {
+            return target(Kind.DROP_TABLE, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof DropColumnChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof AddColumnChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof RenameColumnChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof DropIndexChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof DropNotNullConstraintChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof DropDefaultValueChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof DropUniqueConstraintChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof DropPrimaryKeyChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof DropForeignKeyConstraintChange c) {
+            return target(Kind.MODIFY, c.getBaseTableSchemaName(), c.getBaseTableName(), db);
+        } else if (change instanceof InsertDataChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        } else if (change instanceof AbstractModifyDataChange c) {
+            return target(Kind.MODIFY, c.getSchemaName(), c.getTableName(), db);
+        }
+        return new Target(Kind.BARRIER, null);
+    }
+
+    private static Target target(Kind kind, String schemaName, String tableName, Database db) {
+        if (tableName == null) {
+            return new Target(Kind.BARRIER, null);
+        }
+        var schema = schemaName != null ? schemaName : db.getDefaultSchemaName();
+        return new Target(kind, normalize(schema != null ? schema + "." + tableName : tableName));
+    }
+
+    // one target per line as KIND:table, consecutive duplicates collapsed
+    static String formatTargets(List<Target> targets) {
+        var lines = new ArrayList<String>();
+        Target previous = null;
+        for (var target : targets) {
+            if (!target.equals(previous)) {
+                lines.add(target.table() != null ? target.kind() + ":" + target.table() : target.kind().name());
+            }
+            previous = target;
+        }
+        return String.join("\n", lines);
+    }
+
+    static List<Target> parseTargets(String targets) {
+        return targets.lines()
+                .map(line -> {
+                    var colon = line.indexOf(':');
+                    return colon < 0
+                            ? new Target(Kind.valueOf(line), null)
+                            : new Target(Kind.valueOf(line.substring(0, colon)), line.substring(colon + 1));
+                })
+                .toList();
+    }
+
+    static Target classify(String sql) {
+        var columnRename = SP_RENAME_COLUMN.matcher(sql);
+        if (columnRename.find()) {
+            return new Target(Kind.MODIFY, normalize(columnRename.group(1)));
+        }
+        if (RENAME.matcher(sql).find()) {
+            return new Target(Kind.BARRIER, null);
+        }
+        var matcher = DROP_TABLE.matcher(sql);
+        if (matcher.find()) {
+            return new Target(Kind.DROP_TABLE, normalize(matcher.group(1)));
+        }
+        for (var pattern : List.of(MSSQL_DROP_DEFAULT, ALTER_TABLE, CREATE_INDEX, DROP_INDEX_ON, DML)) {
+            matcher = pattern.matcher(sql);
+            if (matcher.find()) {
+                return new Target(Kind.MODIFY, normalize(matcher.group(1)));
+            }
+        }
+        return new Target(Kind.BARRIER, null);
+    }
+
+    private static String normalize(String name) {
+        return name.replaceAll("[`\"\\[\\]]", "").toUpperCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.database.Database;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+// the rollback statements of the changesets found unexpected when the prefetch ran
+public record RollbackPrefetch(String url, String catalogName, String schemaName,
+        Map<ChangeSetKey, List<String>> rollbackStatements) {
+
+    public boolean matches(Database db) {
+        return db.getConnection() != null
+                && Objects.equals(url, db.getConnection().getURL())
+                && Objects.equals(catalogName, db.getLiquibaseCatalogName())
+                && Objects.equals(schemaName, db.getLiquibaseSchemaName());
+    }
+
+    public Optional<List<String>> findRollbackStatements(String changeSetId, String checksum) {
+        return Optional.ofNullable(rollbackStatements.get(new ChangeSetKey(changeSetId, checksum)));
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import com.whisperinggarden.lar.RollbackRehearsalReport.StatementCost;
+import liquibase.ChecksumVersion;
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.Liquibase;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.LiquibaseException;
+import liquibase.exception.UnexpectedLiquibaseException;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+
+/*
+ * Measures what an auto-rollback of the pending changesets would cost. The changesets are applied to a scratch
+ * database - a separate schema on the production server or an embedded copy in CI - with their rollback statements
+ * stored the same way the customizer stores them, and then rolled back again statement by statement.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class RollbackRehearsal {
+
+    private final LiquibaseRollbackProperties properties;
+    private final Duration slowStatementThreshold;
+
+    @Getter
+    @Setter
+    private Contexts contexts = new Contexts();
+
+    @Getter
+    @Setter
+    private LabelExpression labelExpression = new LabelExpression();
+
+    public RollbackRehearsalReport rehearse(Liquibase scratch) {
+        var db = scratch.getDatabase();
+        var customizer = new LiquibaseRollbackCustomizer(properties);
+        customizer.setContexts(contexts);
+        customizer.setLabelExpression(labelExpression);
+
+        var costs = new ArrayList<StatementCost>();
+        try {
+            var pending = new ArrayList<>(scratch.listUnrunChangeSets(contexts, labelExpression));
+            log.info("Rehearsing the rollback of {} pending changesets", pending.size());
+
+            // stored and executed through the customizer, so pre-images and online DDL behave as in a real rollback
+            var run = customizer.newRun(contexts, labelExpression);
+            customizer.prepareStorage(db, run);
+            customizer.captureRollbackStatements(scratch, run);
+            scratch.update(contexts, labelExpression);
+
+            var store = customizer.getRollbackStore(db);
+            for (var i = pending.size() - 1; i >= 0; i--) {
+                var changeSet = pending.get(i);
+                var statements = store.fetch(changeSet.getId(),
+                        changeSet.generateCheckSum(ChecksumVersion.latest()).toString());
+
+                var stmtOrder = 1;
+                for (var sql : statements) {
+                    var start = System.nanoTime();
+                    try {
+                        customizer.executeRollbackStatement(db, sql);
+                    } catch (DatabaseException e) {
+                        throw new UnexpectedLiquibaseException("Rollback of changeset %s failed on statement #%d [%s]"
+                                .formatted(changeSet.getId(), stmtOrder, sql), e);
+                    }
+                    var duration = Duration.ofNanos(System.nanoTime() - start);
+                    var slow = duration.compareTo(slowStatementThreshold) >= 0;
+                    if (slow) {
+                        log.warn("Slow rollback statement #{} of the changeset {} took {} ms",
+                                stmtOrder, changeSet.getId(), duration.toMillis());
+                    }
+                    costs.add(new StatementCost(changeSet.getId(), stmtOrder++, sql, duration, slow));
+                }
+            }
+        } catch (LiquibaseException e) {
+            throw new UnexpectedLiquibaseException("Unable to rehearse the rollback - " + e.getMessage(), e);
+        }
+
+        var report = new RollbackRehearsalReport(costs, slowStatementThreshold);
+        log.info("Rollback rehearsal completed: {} statements, {} ms in total, {} slow",
+                costs.size(), report.total().toMillis(), report.slowStatements().size());
+        return report;
+    }
+}
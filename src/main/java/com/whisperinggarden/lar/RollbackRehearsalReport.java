@@ -0,0 +1,23 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import java.time.Duration;
+import java.util.List;
+
+public record RollbackRehearsalReport(List<StatementCost> statements, Duration slowStatementThreshold) {
+
+    public Duration total() {
+        return statements.stream().map(StatementCost::duration).reduce(Duration.ZERO, Duration::plus);
+    }
+
+    public List<StatementCost> slowStatements() {
+        return statements.stream().filter(StatementCost::slow).toList();
+    }
+
+    public record StatementCost(String changeSetId, int stmtOrder, String sql, Duration duration, boolean slow) {
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+@Getter
+public class RollbackRun {
+
+    private final Instant startedAt = Instant.now();
+    private final long startNanos = System.nanoTime();
+    private final Duration budget;
+    private final Duration statementTimeout;
+    private final int slowestStatementsLimit;
+
+    @Setter
+    private Contexts contexts = new Contexts();
+    @Setter
+    private LabelExpression labelExpression = new LabelExpression();
+
+    @Setter
+    private RollbackPrefetch prefetch;
+
+    @Setter
+    private RollbackStore rollbackStore;
+
+    @Setter
+    private Duration prepareDuration = Duration.ZERO;
+    @Setter
+    private Duration rollbackDuration = Duration.ZERO;
+    @Setter
+    private Duration persistDuration = Duration.ZERO;
+
+    private int unexpectedChangeSets;
+    private int unrunChangeSets;
+    private int statementsGenerated;
+    private int statementsInserted;
+    private int statementsExecuted;
+
+    @Getter(AccessLevel.NONE)
+    private final PriorityQueue<StatementTiming> slowestStatements =
+            new PriorityQueue<>(Comparator.comparingLong(StatementTiming::nanos));
+
+    public RollbackRun(LiquibaseRollbackProperties properties) {
+        this.budget = properties.getStartupBudget();
+        this.statementTimeout = properties.getStatementTimeout();
+        this.slowestStatementsLimit = properties.getHistorySlowestStatements();
+    }
+
+    public Duration getElapsed() {
+        return Duration.ofNanos(System.nanoTime() - startNanos);
+    }
+
+    public Duration getRemainingBudget() {
+        return budget == null ? null : budget.minus(getElapsed());
+    }
+
+    public boolean isBudgetExhausted() {
+        var remaining = getRemainingBudget();
+        return remaining != null && (remaining.isNegative() || remaining.isZero());
+    }
+
+    public Duration nextStatementTimeout() {
+        var remaining = getRemainingBudget();
+        if (remaining == null) {
+            return statementTimeout;
+        }
+        return statementTimeout == null || remaining.compareTo(statementTimeout) < 0 ? remaining : statementTimeout;
+    }
+
+    public void addUnexpectedChangeSets(int count) {
+        unexpectedChangeSets += count;
+    }
+
+    public void addUnrunChangeSets(int count) {
+        unrunChangeSets += count;
+    }
+
+    public void addStatementsGenerated(int count) {
+        statementsGenerated += count;
+    }
+
+    public void addStatementsInserted(int count) {
+        statementsInserted += count;
+    }
+
+    public void recordExecutedStatement(String changeSetId, int stmtOrder, long nanos) {
+        statementsExecuted++;
+        if (slowestStatementsLimit <= 0) {
+            return;
+        }
+        if (slowestStatements.size() < slowestStatementsLimit) {
+            slowestStatements.add(new StatementTiming(changeSetId, stmtOrder, nanos));
+        } else if (slowestStatements.peek().nanos() < nanos) {
+            slowestStatements.poll();
+            slowestStatements.add(new StatementTiming(changeSetId, stmtOrder, nanos));
+        }
+    }
+
+    public List<StatementTiming> getSlowestStatements() {
+        return slowestStatements.stream()
+                .sorted(Comparator.comparingLong(StatementTiming::nanos).reversed())
+                .toList();
+    }
+
+    public record StatementTiming(String changeSetId, int stmtOrder, long nanos) {
+    }
+}
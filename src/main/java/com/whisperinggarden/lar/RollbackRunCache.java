@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.Contexts;
+import liquibase.LabelExpression;
+import liquibase.Liquibase;
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.exception.DatabaseException;
+import liquibase.exception.LiquibaseException;
+import liquibase.executor.ExecutorService;
+import liquibase.resource.Resource;
+import liquibase.statement.core.RawParameterizedSqlStatement;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static com.whisperinggarden.lar.LiquibaseRollbackUtils.hasTable;
+
+/*
+ * Remembers, for the lifetime of the JVM, the database and changelog states in which an auto-rollback run found
+ * nothing to do. Test suites starting many application contexts against one embedded database skip the repeated
+ * work this way. Tests changing the schema behind the customizer's back have to call invalidate().
+ */
+@Slf4j
+public final class RollbackRunCache {
+
+    private static final Set<String> COMPLETED = ConcurrentHashMap.newKeySet();
+
+    private RollbackRunCache() {
+    }
+
+    public static void invalidate() {
+        COMPLETED.clear();
+    }
+
+    static boolean isCompleted(String key) {
+        return key != null && COMPLETED.contains(key);
+    }
+
+    // a changelog including files the key does not describe is not cached, as their changes would go unnoticed
+    static void markCompleted(String key, Liquibase liquibase) {
+        if (key != null && isDescribed(liquibase)) {
+            COMPLETED.add(key);
+        }
+    }
+
+    // returns null when the state can't be determined, which disables caching for the run. Only metadata is
+    // read - the changelog files' sizes and modification times and an aggregate over the changelog table - so
+    // a skipped run costs a directory listing and one query instead of parsing the changelog and computing checksums
+    static String computeKey(Liquibase liquibase, LiquibaseRollbackProperties properties, Contexts contexts,
+            LabelExpression labelExpression) {
+
+        var db = liquibase.getDatabase();
+        try {
+            var changeLogFiles = describeChangeLogFiles(liquibase);
+            var changeLogTable = describeChangeLogTable(db, properties);
+            if (changeLogTable == null) {
+                return null;
+            }
+
+            var digest = MessageDigest.getInstance("SHA-256");
+            for (var part : new String[] { db.getConnection().getURL(), db.getLiquibaseCatalogName(),
+                    db.getLiquibaseSchemaName(), db.getDefaultSchemaName(), properties.getDbChangeLogTable(),
+                    properties.getDbRollbackTableName(), String.valueOf(contexts), String.valueOf(labelExpression),
+                    liquibase.getChangeLogFile(), changeLogFiles, changeLogTable }) {
+                digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException | UncheckedIOException | DatabaseException e) {
+            log.debug("Unable to compute the auto-rollback cache key - {}", e.getMessage());
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private static String describeChangeLogFiles(Liquibase liquibase) throws IOException {
+        return findChangeLogFiles(liquibase).stream()
+                .map(RollbackRunCache::describe)
+                .sorted()
+                .collect(Collectors.joining("\n"));
+    }
+
+    // included changelogs normally live next to the root one, so its whole directory is described
+    private static List<Resource> findChangeLogFiles(Liquibase liquibase) throws IOException {
+        var accessor = liquibase.getResourceAccessor();
+        var changeLogFile = liquibase.getChangeLogFile();
+        var slash = changeLogFile.lastIndexOf('/');
+        return slash > 0
+                ? accessor.search(changeLogFile.substring(0, slash), true)
+                : List.of(accessor.getExisting(changeLogFile));
+    }
+
+    // the changelog has been parsed by the run already, so this only resolves the files it was read from
+    private static boolean isDescribed(Liquibase liquibase) {
+        try {
+            var described = findChangeLogFiles(liquibase).stream()
+                    .map(Resource::getUri)
+                    .collect(Collectors.toSet());
+            var changeLogFiles = new HashSet<String>();
+            for (var changeSet : liquibase.getDatabaseChangeLog().getChangeSets()) {
+                // walks up through changelogs that only include others
+                var changeLog = changeSet.getChangeLog();
+                while (changeLog != null && changeLogFiles.add(changeLog.getPhysicalFilePath())) {
+                    changeLog = changeLog.getParentChangeLog();
+                }
+            }
+            for (var changeLogFile : changeLogFiles) {
+                if (!described.contains(liquibase.getResourceAccessor().getExisting(changeLogFile).getUri())) {
+                    log.info("Auto-rollback results are not cached - {} is outside the directory of {}",
+                            changeLogFile, liquibase.getChangeLogFile());
+                    return false;
+                }
+            }
+            return true;
+        } catch (IOException | LiquibaseException e) {
+            log.debug("Unable to resolve the included changelogs - {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private static String describe(Resource resource) {
+        var uri = resource.getUri();
+        try {
+            if ("file".equals(uri.getScheme())) {
+                var path = Path.of(uri);
+                return uri + "::" + Files.size(path) + "::" + Files.getLastModifiedTime(path).toMillis();
+            }
+            // e.g. a jar entry - the connection reads the entry's metadata without opening a stream
+            var connection = uri.toURL().openConnection();
+            return uri + "::" + connection.getContentLengthLong() + "::" + connection.getLastModified();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String describeChangeLogTable(Database db, LiquibaseRollbackProperties properties)
+            throws DatabaseException {
+
+        var tableName = properties.getDbChangeLogTable();
+        if (!hasTable(db, tableName)) {
+            return null;
+        }
+
+        var rows = Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", db)
+                .queryForList(new RawParameterizedSqlStatement(
+                        "SELECT COUNT(*), MAX(ORDEREXECUTED), MAX(DATEEXECUTED) FROM %s".formatted(
+                                db.escapeTableName(db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(),
+                                        tableName))));
+        return rows.isEmpty() ? "" : rows.get(0).values().stream()
+                .map(String::valueOf)
+                .collect(Collectors.joining("::"));
+    }
+}
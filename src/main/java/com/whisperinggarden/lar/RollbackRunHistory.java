@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.Scope;
+import liquibase.database.Database;
+import liquibase.datatype.DataTypeFactory;
+import liquibase.exception.DatabaseException;
+import liquibase.executor.Executor;
+import liquibase.executor.ExecutorService;
+import liquibase.statement.AutoIncrementConstraint;
+import liquibase.statement.NotNullConstraint;
+import liquibase.statement.core.CreateTableStatement;
+import liquibase.statement.core.InsertStatement;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.sql.Timestamp;
+import java.util.stream.Collectors;
+
+import static com.whisperinggarden.lar.LiquibaseRollbackUtils.hasTable;
+
+@Slf4j
+@RequiredArgsConstructor
+public class RollbackRunHistory {
+
+    // DATABASECHANGELOGRBHIST table columns:
+    public static final String COL_ID = "ID";
+    public static final String COL_STARTED = "STARTED";
+    public static final String COL_TOTAL_MS = "TOTALMS";
+    public static final String COL_PREPARE_MS = "PREPAREMS";
+    public static final String COL_ROLLBACK_MS = "ROLLBACKMS";
+    public static final String COL_PERSIST_MS = "PERSISTMS";
+    public static final String COL_UNEXPECTED_COUNT = "UNEXPECTEDCOUNT";
+    public static final String COL_UNRUN_COUNT = "UNRUNCOUNT";
+    public static final String COL_STMT_GENERATED = "STMTGENERATED";
+    public static final String COL_STMT_INSERTED = "STMTINSERTED";
+    public static final String COL_STMT_EXECUTED = "STMTEXECUTED";
+    public static final String COL_SLOWEST_STMTS = "SLOWESTSTMTS";
+
+    private static final int SLOWEST_STMTS_MAX_LENGTH = 1024;
+
+    private final LiquibaseRollbackProperties properties;
+
+    public void write(Database db, RollbackRun run) {
+        var tableName = properties.getDbHistoryTableName();
+        var executor = getExecutor(db);
+        try {
+            if (!hasTable(db, tableName)) {
+                createTable(db, executor, tableName);
+            }
+
+            executor.update(new InsertStatement(db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(), tableName)
+                    .addColumnValue(COL_STARTED, Timestamp.from(run.getStartedAt()))
+                    .addColumnValue(COL_TOTAL_MS, run.getElapsed().toMillis())
+                    .addColumnValue(COL_PREPARE_MS, run.getPrepareDuration().toMillis())
+                    .addColumnValue(COL_ROLLBACK_MS, run.getRollbackDuration().toMillis())
+                    .addColumnValue(COL_PERSIST_MS, run.getPersistDuration().toMillis())
+                    .addColumnValue(COL_UNEXPECTED_COUNT, run.getUnexpectedChangeSets())
+                    .addColumnValue(COL_UNRUN_COUNT, run.getUnrunChangeSets())
+                    .addColumnValue(COL_STMT_GENERATED, run.getStatementsGenerated())
+                    .addColumnValue(COL_STMT_INSERTED, run.getStatementsInserted())
+                    .addColumnValue(COL_STMT_EXECUTED, run.getStatementsExecuted())
+                    .addColumnValue(COL_SLOWEST_STMTS, formatSlowestStatements(run)));
+            db.commit();
+        } catch (DatabaseException | RuntimeException e) {
+            // the history is informational only, so it must never break the application startup
+            log.warn("Unable to write the auto-rollback run history - {}", e.getMessage());
+            rollback(db);
+        }
+    }
+
+    static String formatSlowestStatements(RollbackRun run) {
+        var formatted = run.getSlowestStatements().stream()
+                .map(timing -> "%s#%d=%dms".formatted(timing.changeSetId(), timing.stmtOrder(),
+                        timing.nanos() / 1_000_000))
+                .collect(Collectors.joining(";"));
+        return formatted.length() > SLOWEST_STMTS_MAX_LENGTH
+                ? formatted.substring(0, SLOWEST_STMTS_MAX_LENGTH)
+                : formatted;
+    }
+
+    private void createTable(Database db, Executor executor, String tableName) throws DatabaseException {
+        var intType = DataTypeFactory.getInstance().fromDescription("int", db);
+        var bigintType = DataTypeFactory.getInstance().fromDescription("bigint", db);
+        var datetimeType = DataTypeFactory.getInstance().fromDescription("datetime", db);
+        var varcharType = DataTypeFactory.getInstance()
+                .fromDescription("varchar(%d)".formatted(SLOWEST_STMTS_MAX_LENGTH), db);
+
+        log.info("Creating {} table", tableName);
+
+        executor.execute(new CreateTableStatement(db.getLiquibaseCatalogName(), db.getLiquibaseSchemaName(), tableName)
+                .addPrimaryKeyColumn(COL_ID, intType, null, null, null, new AutoIncrementConstraint(COL_ID))
+                .addColumn(COL_STARTED, datetimeType, new NotNullConstraint(COL_STARTED))
+                .addColumn(COL_TOTAL_MS, bigintType, new NotNullConstraint(COL_TOTAL_MS))
+                .addColumn(COL_PREPARE_MS, bigintType, new NotNullConstraint(COL_PREPARE_MS))
+                .addColumn(COL_ROLLBACK_MS, bigintType, new NotNullConstraint(COL_ROLLBACK_MS))
+                .addColumn(COL_PERSIST_MS, bigintType, new NotNullConstraint(COL_PERSIST_MS))
+                .addColumn(COL_UNEXPECTED_COUNT, intType, new NotNullConstraint(COL_UNEXPECTED_COUNT))
+                .addColumn(COL_UNRUN_COUNT, intType, new NotNullConstraint(COL_UNRUN_COUNT))
+                .addColumn(COL_STMT_GENERATED, intType, new NotNullConstraint(COL_STMT_GENERATED))
+                .addColumn(COL_STMT_INSERTED, intType, new NotNullConstraint(COL_STMT_INSERTED))
+                .addColumn(COL_STMT_EXECUTED, intType, new NotNullConstraint(COL_STMT_EXECUTED))
+                .addColumn(COL_SLOWEST_STMTS, varcharType));
+    }
+
+    // a failed statement aborts the whole transaction on some databases (e.g. PostgreSQL), which would fail the update
+    private void rollback(Database db) {
+        try {
+            db.rollback();
+        } catch (DatabaseException | RuntimeException e) {
+            log.warn("Unable to roll back the auto-rollback run history - {}", e.getMessage());
+        }
+    }
+
+    private Executor getExecutor(Database db) {
+        return Scope.getCurrentScope().getSingleton(ExecutorService.class).getExecutor("jdbc", db);
+    }
+}
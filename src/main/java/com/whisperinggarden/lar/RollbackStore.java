@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import java.util.List;
+import java.util.Map;
+
+public interface RollbackStore {
+
+    void initialize();
+
+    void put(String changeSetId, String checksum, List<String> statements);
+
+    // the targets describe the tables the rollback touches (see RollbackPlanOptimizer) and are only a hint, so stores
+    // that don't keep them still work
+    default void put(String changeSetId, String checksum, List<String> statements, String targets) {
+        put(changeSetId, checksum, statements);
+    }
+
+    default String fetchTargets(String changeSetId, String checksum) {
+        return null;
+    }
+
+    List<String> fetch(String changeSetId, String checksum);
+
+    Map<ChangeSetKey, List<String>> fetchAll();
+
+    // the statements up to stmtOrder have been executed
+    void markExecuted(String changeSetId, String checksum, int stmtOrder);
+
+    int getExecutedCount(String changeSetId, String checksum);
+
+    void delete(String changeSetId, String checksum);
+}
@@ -0,0 +1,14 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.database.Database;
+
+@FunctionalInterface
+public interface RollbackStoreFactory {
+
+    RollbackStore create(Database database);
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_CHECKSUM;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_HASH;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_ID;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ID;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMT;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMTEXECUTED;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMTORDER;
+import static com.whisperinggarden.lar.LiquibaseRollbackUtils.changeSetHash;
+
+/*
+ * Streams the rollback table to a gzip-compressed file with one statement per line:
+ *   changeset id<TAB>checksum<TAB>statement order<TAB>executed flag (0/1)<TAB>statement
+ * Files written by the first format version have no executed flag and are still imported.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class RollbackTableTransfer {
+
+    public static final String FORMAT_HEADER = "#liquibase-auto-rollback/2";
+
+    private static final String FORMAT_HEADER_V1 = "#liquibase-auto-rollback/1";
+
+    private static final int DEFAULT_FETCH_SIZE = 1000;
+    private static final int DEFAULT_BATCH_SIZE = 500;
+
+    private final String qualifiedTableName;
+    private final int batchSize;
+
+    public RollbackTableTransfer(String qualifiedTableName) {
+        this(qualifiedTableName, DEFAULT_BATCH_SIZE);
+    }
+
+    public long exportTo(Connection connection, OutputStream out) throws SQLException, IOException {
+        var autoCommit = connection.getAutoCommit();
+        // some drivers (e.g. PostgreSQL) only stream results with a fetch size inside a transaction
+        connection.setAutoCommit(false);
+        try (var stmt = connection.createStatement()) {
+            var gzip = new GZIPOutputStream(out);
+            var writer = new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8));
+            stmt.setFetchSize(DEFAULT_FETCH_SIZE);
+            writer.write(FORMAT_HEADER);
+            writer.newLine();
+
+            long count = 0;
+            try (var rs = stmt.executeQuery("SELECT %s, %s, %s, %s, %s FROM %s ORDER BY %s".formatted(
+                    COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM, COL_ROLLBACKSTMTORDER, COL_ROLLBACKSTMTEXECUTED,
+                    COL_ROLLBACKSTMT, qualifiedTableName, COL_ID))) {
+                while (rs.next()) {
+                    writer.write(String.join("\t", escape(rs.getString(1)), escape(rs.getString(2)),
+                            Integer.toString(rs.getInt(3)), rs.getBoolean(4) ? "1" : "0", escape(rs.getString(5))));
+                    writer.newLine();
+                    count++;
+                }
+            }
+            writer.flush();
+            gzip.finish();
+            log.info("Exported {} rollback statements from {}", count, qualifiedTableName);
+            return count;
+        } finally {
+            connection.commit();
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    public long importFrom(Connection connection, InputStream in, Path checkpointFile)
+            throws SQLException, IOException {
+
+        var skip = readCheckpoint(checkpointFile);
+        if (skip > 0) {
+            log.info("Resuming import into {} after {} already loaded statements", qualifiedTableName, skip);
+        }
+
+        var autoCommit = connection.getAutoCommit();
+        connection.setAutoCommit(false);
+        var reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(in), StandardCharsets.UTF_8));
+        try (var stmt = connection.prepareStatement("INSERT INTO %s (%s, %s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?, ?)"
+                .formatted(qualifiedTableName, COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM,
+                        COL_ROLLBACKSTMTORDER, COL_ROLLBACKSTMT, COL_CHANGELOG_HASH, COL_ROLLBACKSTMTEXECUTED));
+             var existsStmt = connection.prepareStatement("SELECT 1 FROM %s WHERE %s = ? AND %s = ? AND %s = ?"
+                .formatted(qualifiedTableName, COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM, COL_ROLLBACKSTMTORDER))) {
+
+            var header = reader.readLine();
+            if (!FORMAT_HEADER.equals(header) && !FORMAT_HEADER_V1.equals(header)) {
+                throw new IOException("Unsupported rollback export format");
+            }
+            var withExecutedFlag = FORMAT_HEADER.equals(header);
+
+            // a batch committed just before a crash is not in the checkpoint yet, so a resumable import
+            // checks rows against the table until it reaches the first one that is missing
+            var verifying = checkpointFile != null;
+            long lineNo = 0;
+            long inserted = 0;
+            long present = 0;
+            var batched = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (++lineNo <= skip) {
+                    continue;
+                }
+
+                var fields = line.split("\t", -1);
+                if (fields.length != (withExecutedFlag ? 5 : 4)) {
+                    throw new IOException("Malformed rollback record at line %d".formatted(lineNo + 1));
+                }
+                var changeSetId = unescape(fields[0]);
+                var checksum = unescape(fields[1]);
+                var stmtOrder = Integer.parseInt(fields[2]);
+                if (verifying && exists(existsStmt, changeSetId, checksum, stmtOrder)) {
+                    present++;
+                    continue;
+                }
+                verifying = false;
+
+                stmt.setString(1, changeSetId);
+                stmt.setString(2, checksum);
+                stmt.setInt(3, stmtOrder);
+                stmt.setString(4, unescape(fields[fields.length - 1]));
+                stmt.setLong(5, changeSetHash(changeSetId, checksum));
+                stmt.setBoolean(6, withExecutedFlag && "1".equals(fields[3]));
+                stmt.addBatch();
+
+                if (++batched == batchSize) {
+                    inserted += flush(connection, stmt, batched, checkpointFile, lineNo);
+                    batched = 0;
+                }
+            }
+            if (batched > 0) {
+                inserted += flush(connection, stmt, batched, checkpointFile, lineNo);
+            }
+
+            if (checkpointFile != null) {
+                Files.deleteIfExists(checkpointFile);
+            }
+            if (present > 0) {
+                log.info("Skipped {} statements already present in {}", present, qualifiedTableName);
+            }
+            log.info("Imported {} rollback statements into {}", inserted, qualifiedTableName);
+            return inserted;
+        } catch (SQLException | IOException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    private int flush(Connection connection, PreparedStatement stmt, int batched, Path checkpointFile,
+            long lineNo) throws SQLException {
+
+        stmt.executeBatch();
+        connection.commit();
+        writeCheckpoint(checkpointFile, lineNo);
+        return batched;
+    }
+
+    private static boolean exists(PreparedStatement existsStmt, String changeSetId, String checksum,
+            int stmtOrder) throws SQLException {
+
+        existsStmt.setString(1, changeSetId);
+        existsStmt.setString(2, checksum);
+        existsStmt.setInt(3, stmtOrder);
+        try (var rs = existsStmt.executeQuery()) {
+            return rs.next();
+        }
+    }
+
+    private static long readCheckpoint(Path checkpointFile) throws IOException {
+        if (checkpointFile == null || !Files.exists(checkpointFile)) {
+            return 0;
+        }
+        return Long.parseLong(Files.readString(checkpointFile).trim());
+    }
+
+    private static void writeCheckpoint(Path checkpointFile, long loaded) {
+        if (checkpointFile == null) {
+            return;
+        }
+        try {
+            var tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+            Files.writeString(tmp, Long.toString(loaded));
+            Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write the import checkpoint", e);
+        }
+    }
+
+    static String escape(String value) {
+        var sb = new StringBuilder(value.length());
+        for (var c : value.toCharArray()) {
+            switch (c) {
+                case '\\' -> sb.append("\\\\");
+                case '\t' -> sb.append("\\t");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                default -> sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    static String unescape(String value) {
+        var sb = new StringBuilder(value.length());
+        for (var i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                c = switch (value.charAt(++i)) {
+                    case 't' -> '\t';
+                    case 'n' -> '\n';
+                    case 'r' -> '\r';
+                    default -> value.charAt(i);
+                };
+            }
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (var arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                options.put("command", arg);
+                continue;
+            }
+            options.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+        }
+
+        var command = options.get("command");
+        if ((!"export".equals(command) && !"import".equals(command)) || !options.containsKey("url")
+                || !options.containsKey("file")) {
+            System.err.println("""
+                    Usage: RollbackTableTransfer export|import --url=<jdbc url> --file=<path>
+                           [--user=<user>] [--password=<password>] [--table=DATABASECHANGELOGRB]
+                           [--batch-size=500] [--checkpoint=<path>]""");
+            System.exit(2);
+        }
+
+        var transfer = new RollbackTableTransfer(options.getOrDefault("table", "DATABASECHANGELOGRB"),
+                Integer.parseInt(options.getOrDefault("batch-size", Integer.toString(DEFAULT_BATCH_SIZE))));
+        var file = Path.of(options.get("file"));
+        try (var connection = DriverManager.getConnection(options.get("url"),
+                options.get("user"), options.get("password"))) {
+            if ("export".equals(command)) {
+                try (var out = Files.newOutputStream(file)) {
+                    transfer.exportTo(connection, out);
+                }
+            } else {
+                var checkpoint = options.containsKey("checkpoint")
+                        ? Path.of(options.get("checkpoint"))
+                        : file.resolveSibling(file.getFileName() + ".checkpoint");
+                try (var in = Files.newInputStream(file)) {
+                    transfer.importFrom(connection, in, checkpoint);
+                }
+            }
+        }
+    }
+}
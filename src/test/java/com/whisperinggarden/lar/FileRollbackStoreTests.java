@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class FileRollbackStoreTests {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void whenStatementsArePut_thenTheyCanBeFetched() {
+        var store = new FileRollbackStore(tempDir.resolve("store.log"));
+        store.initialize();
+
+        store.put("ID-01", "9:aaa", List.of("DROP TABLE person"));
+        store.put("ID-02", "9:bbb", List.of("ALTER TABLE person\n DROP COLUMN\tname", "DELETE FROM person"));
+
+        assertThat(store.fetch("ID-02", "9:bbb"))
+                .containsExactly("ALTER TABLE person\n DROP COLUMN\tname", "DELETE FROM person");
+        assertThat(store.fetch("ID-02", "9:ccc")).isEmpty();
+        assertThat(store.fetchAll()).containsOnlyKeys(
+                new ChangeSetKey("ID-01", "9:aaa"), new ChangeSetKey("ID-02", "9:bbb"));
+    }
+
+    @Test
+    public void whenStoreIsReopened_thenStatementsAreReplayedFromFile() {
+        var file = tempDir.resolve("store.log");
+        var store = new FileRollbackStore(file);
+        store.initialize();
+        store.put("ID-01", "9:aaa", List.of("DROP TABLE person"));
+        store.put("ID-02", "9:bbb", List.of("DROP TABLE book"));
+        store.delete("ID-01", "9:aaa");
+
+        var reopened = new FileRollbackStore(file);
+        reopened.initialize();
+
+        assertThat(reopened.fetch("ID-01", "9:aaa")).isEmpty();
+        assertThat(reopened.fetch("ID-02", "9:bbb")).containsExactly("DROP TABLE book");
+    }
+
+    @Test
+    public void whenStatementsAreMarkedExecuted_thenProgressSurvivesReopen() {
+        var file = tempDir.resolve("store.log");
+        var store = new FileRollbackStore(file);
+        store.initialize();
+        store.put("ID-01", "9:aaa", List.of("DELETE FROM person", "DROP TABLE person"));
+        store.markExecuted("ID-01", "9:aaa", 1);
+
+        var reopened = new FileRollbackStore(file);
+        reopened.initialize();
+
+        assertThat(reopened.getExecutedCount("ID-01", "9:aaa")).isEqualTo(1);
+        reopened.put("ID-01", "9:aaa", List.of("DROP TABLE person"));
+        assertThat(reopened.getExecutedCount("ID-01", "9:aaa")).isEqualTo(0);
+    }
+
+    @Test
+    public void whenStatementsArePutWithTargets_thenTargetsSurviveReopen() {
+        var file = tempDir.resolve("store.log");
+        var store = new FileRollbackStore(file);
+        store.initialize();
+        store.put("ID-01", "9:aaa", List.of("DROP INDEX idx_person_name"), "MODIFY:PUBLIC.PERSON");
+        store.put("ID-02", "9:bbb", List.of("DROP TABLE person"), "DROP_TABLE:PUBLIC.PERSON\nBARRIER");
+        store.put("ID-02", "9:bbb", List.of("DROP TABLE person"));
+
+        var reopened = new FileRollbackStore(file);
+        reopened.initialize();
+
+        assertThat(reopened.fetchTargets("ID-01", "9:aaa")).isEqualTo("MODIFY:PUBLIC.PERSON");
+        assertThat(reopened.fetchTargets("ID-02", "9:bbb")).isNull();
+    }
+
+    @Test
+    public void whenLogHasMostlySupersededRecords_thenItIsCompactedOnInitialization() throws Exception {
+        var file = tempDir.resolve("store.log");
+        var store = new FileRollbackStore(file);
+        store.initialize();
+        for (var i = 0; i < 5; i++) {
+            store.put("ID-01", "9:aaa", List.of("DROP TABLE person"));
+        }
+        assertThat(Files.readAllLines(file)).hasSize(5);
+
+        var reopened = new FileRollbackStore(file);
+        reopened.initialize();
+
+        assertThat(Files.readAllLines(file)).hasSize(1);
+        assertThat(reopened.fetch("ID-01", "9:aaa")).containsExactly("DROP TABLE person");
+    }
+
+    @Test
+    public void whenStoreIsClosed_thenRecordsAreKeptAndFurtherWritesFail() {
+        var file = tempDir.resolve("store.log");
+        var store = new FileRollbackStore(file);
+        store.initialize();
+        store.put("ID-01", "9:aaa", List.of("DROP TABLE person"));
+
+        store.close();
+
+        assertThatThrownBy(() -> store.put("ID-02", "9:bbb", List.of("DROP TABLE book")))
+                .isInstanceOf(IllegalStateException.class);
+        var reopened = new FileRollbackStore(file);
+        reopened.initialize();
+        assertThat(reopened.fetch("ID-01", "9:aaa")).containsExactly("DROP TABLE person");
+    }
+
+    @Test
+    public void whenDatabasesDiffer_thenFactoryKeepsTheirStatementsInSeparateFiles() throws Exception {
+        var factory = new FileRollbackStoreFactory(tempDir.resolve("store.log"));
+        try (var connection = DriverManager.getConnection("jdbc:h2:mem:testdb" + UUID.randomUUID(), "sa", "")) {
+            var first = database(connection, "FIRST");
+            var second = database(connection, "SECOND");
+
+            var store = factory.create(first);
+            store.initialize();
+            store.put("ID-01", "9:aaa", List.of("DROP TABLE person"));
+            var other = factory.create(second);
+            other.initialize();
+
+            assertThat(factory.create(first)).isSameAs(store);
+            assertThat(other.fetch("ID-01", "9:aaa")).isEmpty();
+            try (var files = Files.list(tempDir)) {
+                assertThat(files.map(path -> path.getFileName().toString()))
+                        .hasSize(2)
+                        .allMatch(name -> name.matches("store-[0-9a-f]{12}\\.log"));
+            }
+
+            factory.destroy();
+
+            assertThatThrownBy(() -> store.put("ID-02", "9:bbb", List.of("DROP TABLE book")))
+                    .isInstanceOf(IllegalStateException.class);
+        }
+    }
+
+    private static Database database(Connection connection, String liquibaseSchema) throws Exception {
+        var database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+        database.setLiquibaseSchemaName(liquibaseSchema);
+        return database;
+    }
+}
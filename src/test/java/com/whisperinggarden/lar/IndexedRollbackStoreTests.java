@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IndexedRollbackStoreTests {
+
+    private Connection connection;
+    private Database database;
+    private LiquibaseRollbackProperties properties;
+
+    @BeforeEach
+    public void beforeEach() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:mem:testdb" + UUID.randomUUID(), "sa", "");
+        database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+        properties = new LiquibaseRollbackProperties();
+        properties.setIndexedStore(true);
+
+        var store = new JdbcRollbackStore(database, properties);
+        store.initialize();
+        store.put("ID-01", "9:aaa", List.of("DROP TABLE person"));
+        store.put("ID-02", "9:bbb", List.of("ALTER TABLE person DROP COLUMN name", "DELETE FROM person"));
+        store.put("ID-02", "9:ccc", List.of("DROP TABLE book"));
+        store.markExecuted("ID-02", "9:bbb", 1);
+    }
+
+    @AfterEach
+    public void afterEach() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    public void whenIndexIsBuilt_thenLookupsMatchTheTable() {
+        var store = new IndexedRollbackStore(database, properties);
+
+        assertThat(store.getIndexedChangeSetCount()).isEqualTo(3);
+        assertThat(store.fetch("ID-02", "9:bbb"))
+                .containsExactly("ALTER TABLE person DROP COLUMN name", "DELETE FROM person");
+        assertThat(store.fetch("ID-02", "9:ccc")).containsExactly("DROP TABLE book");
+        assertThat(store.fetch("ID-03", "9:aaa")).isEmpty();
+        assertThat(store.getExecutedCount("ID-02", "9:bbb")).isEqualTo(1);
+        assertThat(store.getExecutedCount("ID-01", "9:aaa")).isZero();
+    }
+
+    @Test
+    public void whenStoreIsModifiedAfterIndexing_thenLookupsReflectTheChanges() {
+        var store = new IndexedRollbackStore(database, properties);
+        assertThat(store.getIndexedChangeSetCount()).isEqualTo(3);
+
+        store.markExecuted("ID-02", "9:bbb", 2);
+        store.delete("ID-01", "9:aaa");
+        store.put("ID-02", "9:ccc", List.of("DROP TABLE book", "DROP TABLE author"));
+        store.put("ID-04", "9:ddd", List.of("DROP INDEX idx_person_name"));
+
+        assertThat(store.getExecutedCount("ID-02", "9:bbb")).isEqualTo(2);
+        assertThat(store.fetch("ID-01", "9:aaa")).isEmpty();
+        assertThat(store.fetch("ID-02", "9:ccc")).containsExactly("DROP TABLE book", "DROP TABLE author");
+        assertThat(store.fetch("ID-04", "9:ddd")).containsExactly("DROP INDEX idx_person_name");
+        assertThat(new JdbcRollbackStore(database, properties).fetch("ID-01", "9:aaa")).isEmpty();
+    }
+
+    @Test
+    public void whenOnlySomeRowsOfChangeSetHaveHash_thenTheyAreIndexedAsOneEntry() throws Exception {
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("UPDATE %s SET %s = NULL WHERE %s = 'ID-02' AND %s = '9:bbb' AND %s = 1".formatted(
+                    properties.getDbRollbackTableName(), LiquibaseRollbackCustomizer.COL_CHANGELOG_HASH,
+                    LiquibaseRollbackCustomizer.COL_CHANGELOG_ID, LiquibaseRollbackCustomizer.COL_CHANGELOG_CHECKSUM,
+                    LiquibaseRollbackCustomizer.COL_ROLLBACKSTMTORDER));
+        }
+        var store = new IndexedRollbackStore(database, properties);
+
+        assertThat(store.getIndexedChangeSetCount()).isEqualTo(3);
+        assertThat(store.fetch("ID-02", "9:bbb"))
+                .containsExactly("ALTER TABLE person DROP COLUMN name", "DELETE FROM person");
+        assertThat(store.getExecutedCount("ID-02", "9:bbb")).isEqualTo(1);
+    }
+
+    @Test
+    public void whenManyChangeSetsAndStatementsAreIndexed_thenAllAreFound() {
+        var jdbcStore = new JdbcRollbackStore(database, properties);
+        var manyStatements = IntStream.rangeClosed(1, 2500).mapToObj("DELETE FROM person WHERE id = %d"::formatted)
+                .toList();
+        jdbcStore.put("ID-05", "9:eee", manyStatements);
+        for (var i = 0; i < 100; i++) {
+            jdbcStore.put("ID-1" + i, "9:" + i, List.of("DROP TABLE t" + i));
+        }
+        var store = new IndexedRollbackStore(database, properties);
+
+        assertThat(store.getIndexedChangeSetCount()).isEqualTo(104);
+        assertThat(store.fetch("ID-05", "9:eee")).isEqualTo(manyStatements);
+        for (var i = 0; i < 100; i++) {
+            assertThat(store.fetch("ID-1" + i, "9:" + i)).containsExactly("DROP TABLE t" + i);
+        }
+    }
+
+    @Test
+    public void whenIndexedStoreIsEnabled_thenCustomizerCreatesIt() {
+        var customizer = new LiquibaseRollbackCustomizer(properties);
+
+        assertThat(customizer.getRollbackStore(database)).isInstanceOf(IndexedRollbackStore.class);
+    }
+}
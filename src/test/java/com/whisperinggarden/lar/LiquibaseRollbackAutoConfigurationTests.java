@@ -5,10 +5,18 @@
 
 package com.whisperinggarden.lar;
 
+import liquibase.integration.spring.SpringLiquibase;
+import org.h2.jdbcx.JdbcDataSource;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.context.annotation.ImportCandidates;
 import org.springframework.boot.test.context.runner.ApplicationContextRunner;
 
+import javax.sql.DataSource;
+import java.util.UUID;
+
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class LiquibaseRollbackAutoConfigurationTests {
@@ -38,4 +46,84 @@ public class LiquibaseRollbackAutoConfigurationTests {
                     assertThat(context).doesNotHaveBean(LiquibaseRollbackCustomizer.class)
                 );
     }
+
+    @Test
+    void whenBackgroundPrefetchIsEnabled_thenPrefetcherBeanShouldBeCreated() {
+        contextRunner.withPropertyValues("spring.liquibase-rollback.background-prefetch=true")
+                .withBean(DataSource.class, () -> {
+                    var dataSource = new JdbcDataSource();
+                    dataSource.setURL("jdbc:h2:mem:testdb" + UUID.randomUUID());
+                    return dataSource;
+                })
+                .run(context ->
+                    assertThat(context).hasSingleBean(LiquibaseRollbackPrefetcher.class)
+                );
+    }
+
+    @Test
+    void whenBackgroundPrefetchIsMissing_thenPrefetcherBeanShouldNotBeCreated() {
+        contextRunner.withBean(DataSource.class, JdbcDataSource::new)
+                .run(context ->
+                    assertThat(context).doesNotHaveBean(LiquibaseRollbackPrefetcher.class)
+                );
+    }
+
+    @Test
+    void whenFileStoreIsSelected_thenStoreFactoryBeanShouldBeCreated() {
+        contextRunner.withPropertyValues("spring.liquibase-rollback.store=FILE")
+                .run(context ->
+                    assertThat(context).hasSingleBean(FileRollbackStoreFactory.class)
+                );
+    }
+
+    @Test
+    void whenStoreIsMissing_thenStoreFactoryBeanShouldNotBeCreated() {
+        contextRunner.run(context ->
+            assertThat(context).doesNotHaveBean(FileRollbackStoreFactory.class)
+        );
+    }
+
+    @Test
+    void whenAutoConfigurationImportsAreLoaded_thenRollbackAutoConfigurationIsRegistered() {
+        assertThat(ImportCandidates.load(AutoConfiguration.class, getClass().getClassLoader()))
+                .contains(LiquibaseRollbackAutoConfiguration.class.getName());
+    }
+
+    @Test
+    void whenSpringLiquibaseHasContextsAndLabels_thenCustomizerUsesThem() {
+        contextRunner.withBean("liquibase", SpringLiquibase.class, () -> {
+                    var springLiquibase = new SpringLiquibase();
+                    springLiquibase.setContexts("dev,test");
+                    springLiquibase.setLabelFilter("eu");
+                    springLiquibase.setShouldRun(false);
+                    return springLiquibase;
+                }, definition -> definition.getPropertyValues().add("customizer",
+                        new RuntimeBeanReference(LiquibaseRollbackCustomizer.class)))
+                .run(context -> {
+                    assertThat(context.getBean(SpringLiquibase.class).getCustomizer())
+                            .isInstanceOfSatisfying(LiquibaseRollbackCustomizer.FilteredCustomizer.class, filtered -> {
+                                assertThat(filtered.customizer())
+                                        .isSameAs(context.getBean(LiquibaseRollbackCustomizer.class));
+                                assertThat(filtered.contexts().getContexts()).containsExactlyInAnyOrder("dev", "test");
+                                assertThat(filtered.labelExpression().getLabels()).containsExactly("eu");
+                            });
+                });
+    }
+
+    @Test
+    void whenEndpointAccessIsNotGranted_thenEndpointBeanShouldNotBeCreated() {
+        contextRunner.withPropertyValues("management.endpoints.web.exposure.include=liquibaserollback")
+                .run(context ->
+                    assertThat(context).doesNotHaveBean(LiquibaseRollbackEndpoint.class)
+                );
+    }
+
+    @Test
+    void whenEndpointIsExposedWithAccess_thenEndpointBeanShouldBeCreated() {
+        contextRunner.withPropertyValues("management.endpoints.web.exposure.include=liquibaserollback",
+                        "management.endpoint.liquibaserollback.access=UNRESTRICTED")
+                .run(context ->
+                    assertThat(context).hasSingleBean(LiquibaseRollbackEndpoint.class)
+                );
+    }
 }
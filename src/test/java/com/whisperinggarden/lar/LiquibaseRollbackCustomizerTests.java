@@ -5,11 +5,19 @@
 
 package com.whisperinggarden.lar;
 
+import com.whisperinggarden.lar.LiquibaseRollbackProperties.BudgetExceededAction;
+import com.whisperinggarden.lar.LiquibaseRollbackProperties.CaptureMode;
+import liquibase.Contexts;
+import liquibase.LabelExpression;
 import liquibase.Liquibase;
+import liquibase.changelog.ChangeSet;
+import liquibase.changelog.DatabaseChangeLog;
+import liquibase.changelog.visitor.AbstractChangeExecListener;
 import liquibase.database.Database;
 import liquibase.database.DatabaseFactory;
 import liquibase.database.jvm.JdbcConnection;
 import liquibase.exception.LiquibaseException;
+import liquibase.exception.UnexpectedLiquibaseException;
 import liquibase.resource.ClassLoaderResourceAccessor;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -19,13 +27,21 @@ import org.junit.jupiter.api.Test;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_CHECKSUM;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_HASH;
 import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_ID;
 import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ID;
 import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMT;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMTEXECUTED;
 import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMTORDER;
+import static com.whisperinggarden.lar.LiquibaseRollbackUtils.changeSetHash;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
 public class LiquibaseRollbackCustomizerTests {
@@ -185,6 +201,22 @@ public class LiquibaseRollbackCustomizerTests {
             assertThat(columnsRs.getString("DATA_TYPE")).isEqualTo("INTEGER");
             assertThat(columnsRs.getString("IS_NULLABLE")).isEqualTo("NO");
 
+            assertThat(columnsRs.next()).isTrue();
+            assertThat(columnsRs.getString("COLUMN_NAME")).isEqualTo("CHANGELOGHASH");
+            assertThat(columnsRs.getString("DATA_TYPE")).isEqualTo("BIGINT");
+            assertThat(columnsRs.getString("IS_NULLABLE")).isEqualTo("YES");
+
+            assertThat(columnsRs.next()).isTrue();
+            assertThat(columnsRs.getString("COLUMN_NAME")).isEqualTo("ROLLBACKSTMTEXECUTED");
+            assertThat(columnsRs.getString("DATA_TYPE")).isEqualTo("BOOLEAN");
+            assertThat(columnsRs.getString("IS_NULLABLE")).isEqualTo("YES");
+
+            assertThat(columnsRs.next()).isTrue();
+            assertThat(columnsRs.getString("COLUMN_NAME")).isEqualTo("ROLLBACKTARGET");
+            assertThat(columnsRs.getString("DATA_TYPE")).isEqualTo("CHARACTER VARYING");
+            assertThat(columnsRs.getString("IS_NULLABLE")).isEqualTo("YES");
+            assertThat(columnsRs.getString("CHARACTER_MAXIMUM_LENGTH")).isEqualTo("1000");
+
             assertThat(columnsRs.next()).isFalse();
         }
     }
@@ -200,6 +232,122 @@ public class LiquibaseRollbackCustomizerTests {
         }
     }
 
+    @Test
+    public void whenTableHasNoHashColumn_thenColumnIsAddedAndBackfilled() throws Exception {
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("""
+                CREATE TABLE %s.%s (
+                    %s INT AUTO_INCREMENT PRIMARY KEY,
+                    %s VARCHAR(255) NOT NULL,
+                    %s VARCHAR(100) NOT NULL,
+                    %s VARCHAR(4096) NOT NULL,
+                    %s INT NOT NULL
+                );
+            """.formatted(LIQUBASE_SCHEMA, ROLLBACK_TBL, COL_ID, COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM,
+                    COL_ROLLBACKSTMT, COL_ROLLBACKSTMTORDER));
+            stmt.executeUpdate("INSERT INTO %s.%s (%s, %s, %s, %s) VALUES ('ID-01', '9:aaa', 'DROP TABLE a', 1)"
+                    .formatted(LIQUBASE_SCHEMA, ROLLBACK_TBL, COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM,
+                            COL_ROLLBACKSTMT, COL_ROLLBACKSTMTORDER));
+        }
+        connection.commit();
+
+        customizer.createRollbackTable(database);
+
+        try (var stmt = connection.createStatement()) {
+            var rs = stmt.executeQuery("SELECT %s FROM %s.%s".formatted(COL_CHANGELOG_HASH, LIQUBASE_SCHEMA, ROLLBACK_TBL));
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getLong(1)).isEqualTo(changeSetHash("ID-01", "9:aaa"));
+
+            var indexRs = stmt.executeQuery("""
+                    SELECT COLUMN_NAME
+                    FROM INFORMATION_SCHEMA.INDEX_COLUMNS
+                    WHERE TABLE_NAME = '%s' AND INDEX_NAME = '%s'
+                    ORDER BY ORDINAL_POSITION
+                    """.formatted(ROLLBACK_TBL, JdbcRollbackStore.IDX_CHANGELOG_HASH));
+            assertThat(indexRs.next()).isTrue();
+            assertThat(indexRs.getString("COLUMN_NAME")).isEqualTo(COL_CHANGELOG_HASH);
+            assertThat(indexRs.next()).isTrue();
+            assertThat(indexRs.getString("COLUMN_NAME")).isEqualTo(COL_ROLLBACKSTMTORDER);
+        }
+        assertThat(customizer.getRollbackStore(database).fetch("ID-01", "9:aaa")).isEqualTo(List.of("DROP TABLE a"));
+    }
+
+    @Test
+    public void whenManyChangesetsHaveNoHash_thenAllAreBackfilledInBatches() throws Exception {
+        var store = customizer.getRollbackStore(database);
+        store.initialize();
+        var changeSets = JdbcRollbackStore.BACKFILL_BATCH_SIZE + 2;
+        try (var stmt = connection.createStatement()) {
+            for (var i = 0; i < changeSets; i++) {
+                stmt.executeUpdate("INSERT INTO %s.%s (%s, %s, %s, %s) VALUES ('ID-%d', '9:aaa', 'DROP TABLE a', 1)"
+                        .formatted(LIQUBASE_SCHEMA, ROLLBACK_TBL, COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM,
+                                COL_ROLLBACKSTMT, COL_ROLLBACKSTMTORDER, i));
+            }
+        }
+        connection.commit();
+
+        customizer.getRollbackStore(database).initialize();
+
+        try (var stmt = connection.createStatement()) {
+            var rs = stmt.executeQuery("SELECT %s, %s FROM %s.%s".formatted(COL_CHANGELOG_ID, COL_CHANGELOG_HASH,
+                    LIQUBASE_SCHEMA, ROLLBACK_TBL));
+            var rows = 0;
+            while (rs.next()) {
+                assertThat(rs.getLong(2)).isEqualTo(changeSetHash(rs.getString(1), "9:aaa"));
+                rows++;
+            }
+            assertThat(rows).isEqualTo(changeSets);
+        }
+    }
+
+    @Test
+    public void whenRowHasNoHash_thenItIsStillFetchedAndDeleted() throws Exception {
+        var store = customizer.getRollbackStore(database);
+        store.initialize();
+        // written by an instance that predates the hash column, after this one has migrated the table
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("INSERT INTO %s.%s (%s, %s, %s, %s) VALUES ('ID-01', '9:aaa', 'DROP TABLE a', 1)"
+                    .formatted(LIQUBASE_SCHEMA, ROLLBACK_TBL, COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM,
+                            COL_ROLLBACKSTMT, COL_ROLLBACKSTMTORDER));
+        }
+        connection.commit();
+
+        assertThat(store.fetch("ID-01", "9:aaa")).isEqualTo(List.of("DROP TABLE a"));
+        store.markExecuted("ID-01", "9:aaa", 1);
+        assertThat(store.getExecutedCount("ID-01", "9:aaa")).isEqualTo(1);
+        store.delete("ID-01", "9:aaa");
+        assertThat(store.fetch("ID-01", "9:aaa")).isEqualTo(List.of());
+    }
+
+    @Test
+    public void whenPrefetchHasSeenOldRollbackTable_thenTableIsStillMigrated() throws Exception {
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("""
+                CREATE TABLE %s.%s (
+                    %s INT AUTO_INCREMENT PRIMARY KEY,
+                    %s VARCHAR(255) NOT NULL,
+                    %s VARCHAR(100) NOT NULL,
+                    %s VARCHAR(4096) NOT NULL,
+                    %s INT NOT NULL
+                );
+            """.formatted(LIQUBASE_SCHEMA, ROLLBACK_TBL, COL_ID, COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM,
+                    COL_ROLLBACKSTMT, COL_ROLLBACKSTMTORDER));
+        }
+        connection.commit();
+        var prefetchingCustomizer = new LiquibaseRollbackCustomizer(customizer.getProperties());
+        var prefetch = new RollbackPrefetch(database.getConnection().getURL(), database.getLiquibaseCatalogName(),
+                database.getLiquibaseSchemaName(), Map.of());
+        prefetchingCustomizer.setPrefetchSupplier(() -> prefetch);
+
+        prefetchingCustomizer.customize(createLiquibase());
+
+        try (var stmt = connection.createStatement()) {
+            var rs = stmt.executeQuery("SELECT %s, %s FROM %s.%s".formatted(COL_CHANGELOG_HASH,
+                    COL_ROLLBACKSTMTEXECUTED, LIQUBASE_SCHEMA, ROLLBACK_TBL));
+            assertThat(rs.next()).isTrue();
+        }
+    }
+
     @Test
     public void whenUnrunChangesetExists_thenInsertRollbackRecord() throws SQLException {
         createRollbackTableForTest();
@@ -347,6 +495,301 @@ public class LiquibaseRollbackCustomizerTests {
         }
     }
 
+    @Test
+    public void whenStatementsWereAlreadyExecuted_thenRollbackResumesAfterThem() throws Exception {
+        var liquibase = createLiquibaseWithUnexpectedBookChangeSet();
+        var checksum = "9:76d0caf518233544632705e958b00fd4";
+        // none of the statements can run twice; the run was interrupted after the second one
+        customizer.getRollbackStore(database).put("ID-02", checksum, List.of(
+                "ALTER TABLE %s.book DROP COLUMN title".formatted(APP_SCHEMA),
+                "ALTER TABLE %s.book DROP COLUMN note".formatted(APP_SCHEMA),
+                "DROP TABLE %s.book".formatted(APP_SCHEMA)));
+        customizer.getRollbackStore(database).markExecuted("ID-02", checksum, 2);
+        connection.commit();
+
+        customizer.rollbackUnexpectedChangeSets(liquibase);
+
+        try (var stmt = connection.createStatement()) {
+            var tableRs = stmt.executeQuery("SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'BOOK'");
+            assertThat(tableRs.next()).isFalse();
+
+            var rs = stmt.executeQuery("SELECT COUNT(*) FROM %s.%s WHERE ID = 'ID-02'"
+                    .formatted(LIQUBASE_SCHEMA, CHANGELOG_TBL));
+            rs.next();
+            assertThat(rs.getInt(1)).isEqualTo(0);
+
+            rs = stmt.executeQuery("SELECT COUNT(*) FROM %s.%s".formatted(LIQUBASE_SCHEMA, ROLLBACK_TBL));
+            rs.next();
+            assertThat(rs.getInt(1)).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void whenStartupBudgetIsExhaustedAndActionIsDefer_thenRollbackIsDeferred() throws Exception {
+        var liquibase = createLiquibaseWithUnexpectedBookChangeSet();
+        var props = new LiquibaseRollbackProperties();
+        props.setDbRollbackTableName(ROLLBACK_TBL);
+        props.setDbChangeLogTable(CHANGELOG_TBL);
+        props.setStartupBudget(Duration.ZERO);
+        props.setBudgetExceededAction(BudgetExceededAction.DEFER);
+
+        new LiquibaseRollbackCustomizer(props).rollbackUnexpectedChangeSets(liquibase);
+
+        try (var stmt = connection.createStatement()) {
+            var tableRs = stmt.executeQuery("SELECT * FROM INFORMATION_SCHEMA.TABLES " +
+                    "WHERE TABLE_NAME = 'BOOK'");
+            assertThat(tableRs.next()).isTrue();
+
+            var rs = stmt.executeQuery("SELECT COUNT(*) FROM %s.%s WHERE %s = '%s'"
+                    .formatted(LIQUBASE_SCHEMA, ROLLBACK_TBL, COL_CHANGELOG_ID, "ID-02"));
+            rs.next();
+            assertThat(rs.getInt(1)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void whenStartupBudgetIsExhaustedAndActionIsFail_thenBlockedStatementIsReported() throws Exception {
+        var liquibase = createLiquibaseWithUnexpectedBookChangeSet();
+        var props = new LiquibaseRollbackProperties();
+        props.setDbRollbackTableName(ROLLBACK_TBL);
+        props.setDbChangeLogTable(CHANGELOG_TBL);
+        props.setStartupBudget(Duration.ZERO);
+
+        assertThatThrownBy(() -> new LiquibaseRollbackCustomizer(props).rollbackUnexpectedChangeSets(liquibase))
+                .isInstanceOf(UnexpectedLiquibaseException.class)
+                .hasMessageContaining("ID-02")
+                .hasMessageContaining("DROP TABLE %s.book".formatted(APP_SCHEMA));
+    }
+
+    @Test
+    public void whenContextsAndLabelsAreSet_thenFilteredOutChangesetsAreNotPersisted() throws SQLException {
+        createRollbackTableForTest();
+        var props = new LiquibaseRollbackProperties();
+        props.setDbRollbackTableName(ROLLBACK_TBL);
+        props.setDbChangeLogTable(CHANGELOG_TBL);
+        var filteringCustomizer = new LiquibaseRollbackCustomizer(props);
+        filteringCustomizer.setContexts(new Contexts("prod"));
+        filteringCustomizer.setLabelExpression(new LabelExpression("us"));
+
+        filteringCustomizer.persistRollbackStatements(createLiquibase("db/changelog/test-changelog-contexts.yaml"));
+
+        try (var stmt = connection.createStatement()) {
+            var rs = stmt.executeQuery("SELECT DISTINCT %s FROM %s.%s"
+                    .formatted(COL_CHANGELOG_ID, LIQUBASE_SCHEMA, ROLLBACK_TBL));
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getString(1)).isEqualTo("ID-01");
+            assertThat(rs.next()).isFalse();
+        }
+    }
+
+    @Test
+    public void whenHistoryIsEnabled_thenRunIsRecordedInHistoryTable() throws SQLException {
+        var props = new LiquibaseRollbackProperties();
+        props.setDbRollbackTableName(ROLLBACK_TBL);
+        props.setDbChangeLogTable(CHANGELOG_TBL);
+        props.setHistoryEnabled(true);
+
+        new LiquibaseRollbackCustomizer(props).customize(createLiquibase());
+
+        try (var stmt = connection.createStatement()) {
+            var rs = stmt.executeQuery("SELECT %s, %s, %s, %s FROM %s.%s".formatted(RollbackRunHistory.COL_UNEXPECTED_COUNT,
+                    RollbackRunHistory.COL_UNRUN_COUNT, RollbackRunHistory.COL_STMT_GENERATED,
+                    RollbackRunHistory.COL_STMT_INSERTED, LIQUBASE_SCHEMA, props.getDbHistoryTableName()));
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getInt(1)).isEqualTo(0);
+            assertThat(rs.getInt(2)).isEqualTo(1);
+            assertThat(rs.getInt(3)).isEqualTo(1);
+            assertThat(rs.getInt(4)).isEqualTo(1);
+            assertThat(rs.next()).isFalse();
+        }
+    }
+
+    @Test
+    public void whenHistoryCannotBeWritten_thenRunStillSucceeds() throws Exception {
+        var props = new LiquibaseRollbackProperties();
+        props.setDbRollbackTableName(ROLLBACK_TBL);
+        props.setDbChangeLogTable(CHANGELOG_TBL);
+        props.setHistoryEnabled(true);
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE %s.%s (ID INT NOT NULL, UNRELATED INT NOT NULL)"
+                    .formatted(LIQUBASE_SCHEMA, props.getDbHistoryTableName()));
+        }
+        connection.commit();
+        var liquibase = createLiquibase();
+
+        new LiquibaseRollbackCustomizer(props).customize(liquibase);
+        liquibase.update();
+
+        try (var stmt = connection.createStatement()) {
+            var rs = stmt.executeQuery("SELECT COUNT(*) FROM %s.%s".formatted(LIQUBASE_SCHEMA, ROLLBACK_TBL));
+            rs.next();
+            assertThat(rs.getInt(1)).isEqualTo(1);
+            rs = stmt.executeQuery("SELECT COUNT(*) FROM %s.%s"
+                    .formatted(LIQUBASE_SCHEMA, props.getDbHistoryTableName()));
+            rs.next();
+            assertThat(rs.getInt(1)).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void whenCaptureModeIsOnExecute_thenRollbackIsStoredOnlyForExecutedChangesets() throws Exception {
+        var props = new LiquibaseRollbackProperties();
+        props.setDbRollbackTableName(ROLLBACK_TBL);
+        props.setDbChangeLogTable(CHANGELOG_TBL);
+        props.setCaptureMode(CaptureMode.ON_EXECUTE);
+        var liquibase = createLiquibase();
+
+        new LiquibaseRollbackCustomizer(props).customize(liquibase);
+
+        try (var stmt = connection.createStatement()) {
+            var rs = stmt.executeQuery("SELECT COUNT(*) FROM %s.%s".formatted(LIQUBASE_SCHEMA, ROLLBACK_TBL));
+            rs.next();
+            assertThat(rs.getInt(1)).isEqualTo(0);
+        }
+
+        liquibase.update();
+
+        try (var stmt = connection.createStatement()) {
+            var rs = stmt.executeQuery("SELECT %s, %s FROM %s.%s"
+                    .formatted(COL_CHANGELOG_ID, COL_ROLLBACKSTMT, LIQUBASE_SCHEMA, ROLLBACK_TBL));
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getString(1)).isEqualTo("ID-01");
+            assertThat(rs.getString(2)).isEqualTo("DROP TABLE %s.person".formatted(APP_SCHEMA));
+            assertThat(rs.next()).isFalse();
+        }
+    }
+
+    @Test
+    public void whenApplicationListenerIsSet_thenItIsChainedWithCaptureListener() throws Exception {
+        var props = new LiquibaseRollbackProperties();
+        props.setDbRollbackTableName(ROLLBACK_TBL);
+        props.setDbChangeLogTable(CHANGELOG_TBL);
+        props.setCaptureMode(CaptureMode.ON_EXECUTE);
+        var ranChangeSets = new ArrayList<String>();
+        var onExecuteCustomizer = new LiquibaseRollbackCustomizer(props);
+        onExecuteCustomizer.setChangeExecListener(new AbstractChangeExecListener() {
+            @Override
+            public void ran(ChangeSet changeSet, DatabaseChangeLog databaseChangeLog, Database database,
+                    ChangeSet.ExecType execType) {
+                ranChangeSets.add(changeSet.getId());
+            }
+        });
+        var liquibase = createLiquibase();
+
+        onExecuteCustomizer.customize(liquibase);
+        liquibase.update();
+
+        assertThat(String.join(",", ranChangeSets)).isEqualTo("ID-01");
+        try (var stmt = connection.createStatement()) {
+            var rs = stmt.executeQuery("SELECT COUNT(*) FROM %s.%s".formatted(LIQUBASE_SCHEMA, ROLLBACK_TBL));
+            rs.next();
+            assertThat(rs.getInt(1)).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void whenCachingIsEnabledAndNothingChanged_thenLaterRunsAreSkipped() throws Exception {
+        var props = new LiquibaseRollbackProperties();
+        props.setDbRollbackTableName(ROLLBACK_TBL);
+        props.setDbChangeLogTable(CHANGELOG_TBL);
+        props.setCacheResults(true);
+        var cachingCustomizer = new LiquibaseRollbackCustomizer(props);
+        createLiquibase().update();
+        cachingCustomizer.customize(createLiquibase());
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("DROP TABLE %s.%s".formatted(LIQUBASE_SCHEMA, ROLLBACK_TBL));
+        }
+
+        cachingCustomizer.customize(createLiquibase());
+
+        try (var stmt = connection.createStatement()) {
+            var tableRs = stmt.executeQuery("SELECT * FROM INFORMATION_SCHEMA.TABLES " +
+                    "WHERE TABLE_NAME = '%s'".formatted(ROLLBACK_TBL));
+            assertThat(tableRs.next()).isFalse();
+        }
+
+        RollbackRunCache.invalidate();
+        cachingCustomizer.customize(createLiquibase());
+
+        try (var stmt = connection.createStatement()) {
+            var tableRs = stmt.executeQuery("SELECT * FROM INFORMATION_SCHEMA.TABLES " +
+                    "WHERE TABLE_NAME = '%s'".formatted(ROLLBACK_TBL));
+            assertThat(tableRs.next()).isTrue();
+        }
+    }
+
+    @Test
+    public void whenChangeLogIncludesFileOutsideItsDirectory_thenRunIsNotCached() throws Exception {
+        var props = new LiquibaseRollbackProperties();
+        props.setDbRollbackTableName(ROLLBACK_TBL);
+        props.setDbChangeLogTable(CHANGELOG_TBL);
+        props.setCacheResults(true);
+        var cachingCustomizer = new LiquibaseRollbackCustomizer(props);
+        var changeLogFile = "db/changelog/include/test-changelog-include.yaml";
+        createLiquibase(changeLogFile).update();
+        cachingCustomizer.customize(createLiquibase(changeLogFile));
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("DROP TABLE %s.%s".formatted(LIQUBASE_SCHEMA, ROLLBACK_TBL));
+        }
+
+        cachingCustomizer.customize(createLiquibase(changeLogFile));
+
+        try (var stmt = connection.createStatement()) {
+            var tableRs = stmt.executeQuery("SELECT * FROM INFORMATION_SCHEMA.TABLES " +
+                    "WHERE TABLE_NAME = '%s'".formatted(ROLLBACK_TBL));
+            assertThat(tableRs.next()).isTrue();
+        }
+    }
+
+    @Test
+    public void whenChangeLogTableChanges_thenCacheKeyChanges() throws Exception {
+        var props = customizer.getProperties();
+        var liquibase = createLiquibase();
+        liquibase.update();
+        var key = RollbackRunCache.computeKey(liquibase, props, new Contexts(), new LabelExpression());
+        assertThat(key).isNotNull();
+        assertThat(RollbackRunCache.computeKey(createLiquibase(), props, new Contexts(), new LabelExpression()))
+                .isEqualTo(key);
+
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("""
+                    INSERT INTO %s.%s (ID, AUTHOR, FILENAME, DATEEXECUTED, ORDEREXECUTED, EXECTYPE, MD5SUM)
+                    VALUES ('ID-02', 'author', 'db/changelog/test-changelog-2.yaml', NOW(), 2, 'EXECUTED', '9:0')
+                    """.formatted(LIQUBASE_SCHEMA, CHANGELOG_TBL));
+        }
+
+        assertThat(RollbackRunCache.computeKey(createLiquibase(), props, new Contexts(), new LabelExpression()))
+                .isNotEqualTo(key);
+    }
+
+    private Liquibase createLiquibaseWithUnexpectedBookChangeSet() throws SQLException, LiquibaseException {
+        var liquibase = createLiquibase();
+        liquibase.update();
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("""
+                CREATE TABLE %s.%s (
+                    ID INT AUTO_INCREMENT PRIMARY KEY
+                );
+            """.formatted(APP_SCHEMA, "book"));
+            stmt.executeUpdate("""
+                    INSERT INTO %s.%s (ID, AUTHOR, FILENAME, DATEEXECUTED, ORDEREXECUTED, EXECTYPE, MD5SUM)
+                    VALUES ('ID-02', 'author', 'db/changelog/test-changelog-2.yaml', NOW(), 2, 'EXECUTED', '%s')
+                    """.formatted(LIQUBASE_SCHEMA, CHANGELOG_TBL, "9:76d0caf518233544632705e958b00fd4"));
+        }
+        createRollbackTableForTest();
+        try (var stmt = connection.prepareStatement("INSERT INTO %s.%s (%s, %s, %s, %s) VALUES (?, ?, ?, ?)"
+                .formatted(LIQUBASE_SCHEMA, ROLLBACK_TBL, COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM,
+                        COL_ROLLBACKSTMT, COL_ROLLBACKSTMTORDER))) {
+            stmt.setString(1, "ID-02");
+            stmt.setString(2, "9:76d0caf518233544632705e958b00fd4");
+            stmt.setString(3, "DROP TABLE %s.book".formatted(APP_SCHEMA));
+            stmt.setInt(4, 1);
+            stmt.executeUpdate();
+        }
+        connection.commit();
+        return liquibase;
+    }
+
     private Liquibase createLiquibase() {
         return createLiquibase("db/changelog/test-changelog.yaml");
     }
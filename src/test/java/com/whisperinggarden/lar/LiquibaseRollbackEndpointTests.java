@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.AutoConfigurations;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseAutoConfiguration;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import javax.sql.DataSource;
+import java.util.UUID;
+
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_CHECKSUM;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_HASH;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_ID;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMT;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMTORDER;
+import static com.whisperinggarden.lar.LiquibaseRollbackUtils.changeSetHash;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class LiquibaseRollbackEndpointTests {
+
+    private static final String CHECKSUM = "9:76d0caf518233544632705e958b00fd4";
+
+    private final ApplicationContextRunner contextRunner = new ApplicationContextRunner()
+            .withConfiguration(AutoConfigurations.of(DataSourceAutoConfiguration.class,
+                    LiquibaseAutoConfiguration.class, LiquibaseRollbackAutoConfiguration.class))
+            .withPropertyValues("spring.datasource.url=jdbc:h2:mem:testdb" + UUID.randomUUID() + ";DB_CLOSE_DELAY=-1",
+                    "spring.liquibase.change-log=classpath:db/changelog/test-changelog.yaml",
+                    "management.endpoints.web.exposure.include=liquibaserollback",
+                    "management.endpoint.liquibaserollback.access=UNRESTRICTED");
+
+    @Test
+    public void whenUnexpectedChangesetExists_thenItIsPlannedAndRolledBackOnDemand() {
+        contextRunner.run(context -> {
+            addUnexpectedBookChangeSet(context.getBean(DataSource.class));
+            var endpoint = context.getBean(LiquibaseRollbackEndpoint.class);
+
+            assertThat(endpoint.plan().get("liquibase"))
+                    .extracting(LiquibaseRollbackEndpoint.UnexpectedChangeSet::id,
+                            LiquibaseRollbackEndpoint.UnexpectedChangeSet::rollbackStatements)
+                    .containsExactly(tuple("ID-02", 1));
+
+            var result = endpoint.rollback().get("liquibase");
+            assertThat(result.unexpectedChangeSets()).isEqualTo(1);
+            assertThat(result.statementsExecuted()).isEqualTo(1);
+            assertThat(endpoint.plan().get("liquibase")).isEmpty();
+        });
+    }
+
+    private void addUnexpectedBookChangeSet(DataSource dataSource) throws Exception {
+        try (var connection = dataSource.getConnection(); var stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE book (ID INT AUTO_INCREMENT PRIMARY KEY)");
+            stmt.executeUpdate("""
+                    INSERT INTO DATABASECHANGELOG (ID, AUTHOR, FILENAME, DATEEXECUTED, ORDEREXECUTED, EXECTYPE, MD5SUM)
+                    VALUES ('ID-02', 'author', 'db/changelog/test-changelog-2.yaml', NOW(), 2, 'EXECUTED', '%s')
+                    """.formatted(CHECKSUM));
+            stmt.executeUpdate("""
+                    INSERT INTO DATABASECHANGELOGRB (%s, %s, %s, %s, %s)
+                    VALUES ('ID-02', '%s', 'DROP TABLE book', 1, %d)
+                    """.formatted(COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM, COL_ROLLBACKSTMT, COL_ROLLBACKSTMTORDER,
+                            COL_CHANGELOG_HASH, CHECKSUM, changeSetHash("ID-02", CHECKSUM)));
+        }
+    }
+}
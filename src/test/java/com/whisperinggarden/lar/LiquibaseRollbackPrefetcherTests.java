@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseProperties;
+import org.springframework.core.io.DefaultResourceLoader;
+
+import java.sql.Connection;
+import java.util.List;
+import java.util.UUID;
+
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_CHECKSUM;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_ID;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ID;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMT;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMTORDER;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LiquibaseRollbackPrefetcherTests {
+
+    private static final String ROLLBACK_TBL = "ROLLBACK_TEST_TBL";
+    private static final String CHANGELOG_TBL = "DATABASECHANGELOG";
+
+    private JdbcDataSource dataSource;
+    private Connection connection;
+    private LiquibaseRollbackProperties properties;
+    private LiquibaseProperties liquibaseProperties;
+
+    @BeforeEach
+    public void beforeEach() throws Exception {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:testdb" + UUID.randomUUID());
+        dataSource.setUser("sa");
+        connection = dataSource.getConnection();
+        properties = new LiquibaseRollbackProperties();
+        properties.setDbRollbackTableName(ROLLBACK_TBL);
+        properties.setDbChangeLogTable(CHANGELOG_TBL);
+        liquibaseProperties = new LiquibaseProperties();
+        liquibaseProperties.setChangeLog("classpath:db/changelog/test-changelog-contexts.yaml");
+        liquibaseProperties.setContexts(List.of("test"));
+    }
+
+    @AfterEach
+    public void afterEach() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    public void whenTablesDoNotExist_thenEmptyPrefetchIsTaken() {
+        var prefetcher = createPrefetcher();
+
+        prefetcher.afterPropertiesSet();
+
+        var prefetch = prefetcher.takePrefetch();
+        assertThat(prefetch).isNotNull();
+        assertThat(prefetch.rollbackStatements()).isEmpty();
+        assertThat(prefetcher.takePrefetch()).isNull();
+    }
+
+    @Test
+    public void whenTablesExist_thenOnlyUnexpectedChangeSetsArePrefetchedInOrder() throws Exception {
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE %s (ID VARCHAR(255), AUTHOR VARCHAR(255), FILENAME VARCHAR(255), MD5SUM VARCHAR(35))"
+                    .formatted(CHANGELOG_TBL));
+            // ID-01 and ID-02 are in the changelog, ID-03 is filtered out by its label, ID-04 was removed
+            stmt.executeUpdate("""
+                    INSERT INTO %s VALUES
+                        ('ID-01', 'sshushkevich', 'db/changelog/test-changelog-contexts.yaml', '9:aaa'),
+                        ('ID-02', 'sshushkevich', 'db/changelog/test-changelog-contexts.yaml', '9:bbb'),
+                        ('ID-04', 'sshushkevich', 'db/changelog/test-changelog-contexts.yaml', '9:ddd')
+                    """.formatted(CHANGELOG_TBL));
+            stmt.executeUpdate("""
+                CREATE TABLE %s (
+                    %s INT AUTO_INCREMENT PRIMARY KEY,
+                    %s VARCHAR(255) NOT NULL,
+                    %s VARCHAR(100) NOT NULL,
+                    %s VARCHAR(4096) NOT NULL,
+                    %s INT NOT NULL
+                );
+            """.formatted(ROLLBACK_TBL, COL_ID, COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM,
+                    COL_ROLLBACKSTMT, COL_ROLLBACKSTMTORDER));
+            stmt.executeUpdate("""
+                    INSERT INTO %s (%s, %s, %s, %s) VALUES
+                        ('ID-02', '9:bbb', 'DROP TABLE b', 1),
+                        ('ID-04', '9:ddd', 'DROP TABLE d', 2),
+                        ('ID-04', '9:ddd', 'ALTER TABLE d DROP COLUMN c', 1)
+                    """.formatted(ROLLBACK_TBL, COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM,
+                    COL_ROLLBACKSTMT, COL_ROLLBACKSTMTORDER));
+        }
+        var prefetcher = createPrefetcher();
+
+        prefetcher.afterPropertiesSet();
+
+        var prefetch = prefetcher.takePrefetch();
+        assertThat(prefetch.rollbackStatements()).containsOnlyKeys(new ChangeSetKey("ID-04", "9:ddd"));
+        assertThat(prefetch.findRollbackStatements("ID-04", "9:ddd"))
+                .contains(List.of("ALTER TABLE d DROP COLUMN c", "DROP TABLE d"));
+        assertThat(prefetch.findRollbackStatements("ID-02", "9:bbb")).isEmpty();
+    }
+
+    @Test
+    public void whenUnexpectedChangeSetHasNoStatements_thenEmptyListIsPrefetched() throws Exception {
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("CREATE TABLE %s (ID VARCHAR(255), AUTHOR VARCHAR(255), FILENAME VARCHAR(255), MD5SUM VARCHAR(35))"
+                    .formatted(CHANGELOG_TBL));
+            stmt.executeUpdate("INSERT INTO %s VALUES ('ID-04', 'sshushkevich', 'db/changelog/removed.yaml', '9:ddd')"
+                    .formatted(CHANGELOG_TBL));
+        }
+        var prefetcher = createPrefetcher();
+
+        prefetcher.afterPropertiesSet();
+
+        assertThat(prefetcher.takePrefetch().findRollbackStatements("ID-04", "9:ddd")).contains(List.of());
+    }
+
+    private LiquibaseRollbackPrefetcher createPrefetcher() {
+        return new LiquibaseRollbackPrefetcher(dataSource, properties, liquibaseProperties,
+                new DefaultResourceLoader());
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LiquibaseRollbackRuntimeHintsTests {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    @Test
+    void whenHintsAreRegistered_thenSqlGeneratorServiceFileIsIncluded() {
+        new LiquibaseRollbackRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        assertThat(RuntimeHintsPredicates.resource()
+                .forResource("META-INF/services/liquibase.sqlgenerator.SqlGenerator")).accepts(hints);
+    }
+
+    @Test
+    void whenHintsAreRegistered_thenGeneratorAndStatementAreReflective() {
+        new LiquibaseRollbackRuntimeHints().registerHints(hints, getClass().getClassLoader());
+
+        assertThat(RuntimeHintsPredicates.reflection().onType(SelectGenerator.class)
+                .withMemberCategory(MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onType(SelectStatement.class)
+                .withMemberCategory(MemberCategory.INVOKE_PUBLIC_METHODS)).accepts(hints);
+        assertThat(RuntimeHintsPredicates.reflection().onType(LiquibaseRollbackProperties.class)).accepts(hints);
+    }
+}
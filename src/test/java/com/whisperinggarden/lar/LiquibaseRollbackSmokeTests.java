@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import javax.sql.DataSource;
+
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_ID;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMT;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Runs on the JVM and, with the "native" profile, as a native image
+@SpringBootTest(classes = LiquibaseRollbackSmokeTests.SmokeTestApplication.class, properties = {
+        "spring.datasource.url=jdbc:h2:mem:smoketest",
+        "spring.liquibase.change-log=classpath:db/changelog/test-changelog.yaml"
+})
+public class LiquibaseRollbackSmokeTests {
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Test
+    void whenApplicationStarts_thenRollbackStatementsAreStoredForAppliedChangeSets() throws Exception {
+        try (var connection = dataSource.getConnection(); var stmt = connection.createStatement()) {
+            var rs = stmt.executeQuery("SELECT %s, %s FROM DATABASECHANGELOGRB".formatted(COL_CHANGELOG_ID,
+                    COL_ROLLBACKSTMT));
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getString(1)).isEqualTo("ID-01");
+            assertThat(rs.getString(2)).startsWith("DROP TABLE").endsWith("person");
+            assertThat(rs.next()).isFalse();
+        }
+    }
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration
+    static class SmokeTestApplication {
+    }
+}
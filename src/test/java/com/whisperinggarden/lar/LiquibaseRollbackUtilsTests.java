@@ -7,7 +7,10 @@ package com.whisperinggarden.lar;
 
 import liquibase.database.Database;
 import liquibase.database.DatabaseFactory;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.PostgresDatabase;
 import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -15,6 +18,8 @@ import org.junit.jupiter.api.Test;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.Duration;
 import java.util.UUID;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
@@ -48,4 +53,29 @@ public class LiquibaseRollbackUtilsTests {
     public void whenTableDoesNotExist_ThenHasTableReturnsFalse() throws SQLException {
         assertThat(LiquibaseRollbackUtils.hasTable(database, "nonexistent_table")).isFalse();
     }
+
+    @Test
+    public void whenCauseIsTimeout_ThenIsTimeoutReturnsTrue() {
+        assertThat(LiquibaseRollbackUtils.isTimeout(new DatabaseException(new SQLTimeoutException("timeout"))))
+                .isTrue();
+        assertThat(LiquibaseRollbackUtils.isTimeout(new DatabaseException(
+                new SQLException("lock timeout", "55P03")))).isTrue();
+        assertThat(LiquibaseRollbackUtils.isTimeout(new DatabaseException(
+                new SQLException("Lock wait timeout exceeded", "HY000", 1205)))).isTrue();
+    }
+
+    @Test
+    public void whenCauseIsNotTimeout_ThenIsTimeoutReturnsFalse() {
+        assertThat(LiquibaseRollbackUtils.isTimeout(new DatabaseException(
+                new SQLException("syntax error", "42601")))).isFalse();
+    }
+
+    @Test
+    public void whenDatabaseSupportsLockTimeout_ThenDialectStatementIsReturned() {
+        assertThat(LiquibaseRollbackUtils.lockTimeoutStatement(new PostgresDatabase(), Duration.ofSeconds(5)))
+                .isEqualTo("SET lock_timeout = '5000ms'");
+        assertThat(LiquibaseRollbackUtils.lockTimeoutStatement(new MySQLDatabase(), Duration.ofMillis(1500)))
+                .isEqualTo("SET SESSION innodb_lock_wait_timeout = 2");
+        assertThat(LiquibaseRollbackUtils.lockTimeoutStatement(database, Duration.ofSeconds(5))).isNull();
+    }
 }
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.database.core.H2Database;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.PostgresDatabase;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OnlineDdlRewriterTests {
+
+    @Test
+    public void whenPostgresIndexIsChanged_ThenConcurrentVariantIsUsed() {
+        var db = new PostgresDatabase();
+
+        assertThat(OnlineDdlRewriter.rewrite(db, "DROP INDEX public.idx_person_name"))
+                .containsExactly("DROP INDEX CONCURRENTLY IF EXISTS public.idx_person_name");
+        assertThat(OnlineDdlRewriter.rewrite(db, "ALTER TABLE public.person DROP COLUMN name"))
+                .containsExactly("ALTER TABLE public.person DROP COLUMN name");
+        assertThat(OnlineDdlRewriter.requiresAutoCommit(db, "DROP INDEX CONCURRENTLY IF EXISTS idx")).isTrue();
+        assertThat(OnlineDdlRewriter.requiresAutoCommit(db, "DROP TABLE person")).isFalse();
+    }
+
+    @Test
+    public void whenPostgresIndexIsCreated_ThenLeftoverOfInterruptedBuildIsDroppedFirst() {
+        var db = new PostgresDatabase();
+
+        assertThat(OnlineDdlRewriter.rewrite(db, "CREATE UNIQUE INDEX idx_person_name ON public.person(name)"))
+                .containsExactly("DROP INDEX CONCURRENTLY IF EXISTS public.idx_person_name",
+                        "CREATE UNIQUE INDEX CONCURRENTLY idx_person_name ON public.person(name)");
+        assertThat(OnlineDdlRewriter.rewrite(db, "CREATE INDEX \"Idx_Name\" ON \"App\".\"Person\"(name)"))
+                .containsExactly("DROP INDEX CONCURRENTLY IF EXISTS \"App\".\"Idx_Name\"",
+                        "CREATE INDEX CONCURRENTLY \"Idx_Name\" ON \"App\".\"Person\"(name)");
+        assertThat(OnlineDdlRewriter.rewrite(db, "CREATE INDEX idx_person_name ON person(name)"))
+                .containsExactly("DROP INDEX CONCURRENTLY IF EXISTS idx_person_name",
+                        "CREATE INDEX CONCURRENTLY idx_person_name ON person(name)");
+    }
+
+    @Test
+    public void whenMySqlTableIsAltered_ThenInPlaceAlgorithmIsRequested() {
+        var db = new MySQLDatabase();
+
+        assertThat(OnlineDdlRewriter.rewrite(db, "ALTER TABLE app.person DROP COLUMN name;"))
+                .containsExactly("ALTER TABLE app.person DROP COLUMN name, ALGORITHM=INPLACE, LOCK=NONE");
+        assertThat(OnlineDdlRewriter.rewrite(db, "DROP INDEX idx_person_name ON app.person"))
+                .containsExactly("DROP INDEX idx_person_name ON app.person ALGORITHM=INPLACE LOCK=NONE");
+        assertThat(OnlineDdlRewriter.rewrite(db, "ALTER TABLE app.person MODIFY name VARCHAR(10)"))
+                .containsExactly("ALTER TABLE app.person MODIFY name VARCHAR(10)");
+        assertThat(OnlineDdlRewriter.requiresAutoCommit(db, "DROP INDEX idx ON person")).isFalse();
+    }
+
+    @Test
+    public void whenDialectHasNoOnlineVariant_ThenStatementIsUnchanged() {
+        assertThat(OnlineDdlRewriter.rewrite(new H2Database(), "DROP INDEX idx_person_name"))
+                .containsExactly("DROP INDEX idx_person_name");
+    }
+}
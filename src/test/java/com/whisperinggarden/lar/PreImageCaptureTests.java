@@ -0,0 +1,248 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.Liquibase;
+import liquibase.change.Change;
+import liquibase.change.core.DeleteDataChange;
+import liquibase.change.core.DropColumnChange;
+import liquibase.change.core.DropTableChange;
+import liquibase.changelog.ChangeSet;
+import liquibase.database.Database;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.exception.DatabaseException;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class PreImageCaptureTests {
+
+    private Connection connection;
+    private Database database;
+    private LiquibaseRollbackProperties properties;
+
+    @BeforeEach
+    public void beforeEach() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:mem:testdb" + UUID.randomUUID(), "sa", "");
+        database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+        properties = new LiquibaseRollbackProperties();
+        properties.setPreImageCapture(true);
+        properties.setPreImageChunkSize(2);
+        new PreImageCapture(properties).initialize(database);
+
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate(
+                    "CREATE TABLE person (id INT PRIMARY KEY, name VARCHAR(50) NOT NULL, email VARCHAR(100))");
+            stmt.executeUpdate("""
+                    INSERT INTO person VALUES
+                        (1, 'Ann', 'ann@example.com'),
+                        (2, 'Bob', NULL),
+                        (3, 'Tab\tbed', 'line\\nbreak'),
+                        (4, 'Dan', 'dan@example.com'),
+                        (5, 'Eve', 'eve@example.com')
+                    """);
+        }
+    }
+
+    @AfterEach
+    public void afterEach() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    public void whenDroppedColumnIsRestored_thenValuesAreBackInChunks() throws Exception {
+        var change = new DropColumnChange();
+        change.setTableName("person");
+        change.setColumnName("email");
+        var changeSet = changeSet(change);
+        var capture = new PreImageCapture(properties);
+
+        capture.capture(change, changeSet, database);
+        var before = readPersons();
+        assertThat(countChunks()).isEqualTo(4);
+
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE person DROP COLUMN email");
+        }
+        capture.restore(database, PreImageCapture.captureId(changeSet, 0));
+
+        assertThat(readPersons()).isEqualTo(before);
+        assertThat(countChunks()).isZero();
+    }
+
+    @Test
+    public void whenDroppedNotNullColumnIsRestored_thenConstraintIsReappliedAfterData() throws Exception {
+        var change = new DropColumnChange();
+        change.setTableName("person");
+        change.setColumnName("name");
+        var changeSet = changeSet(change);
+        var capture = new PreImageCapture(properties);
+
+        capture.capture(change, changeSet, database);
+        var before = readPersons();
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE person DROP COLUMN name");
+        }
+        capture.restore(database, PreImageCapture.captureId(changeSet, 0));
+
+        assertThat(readPersons()).isEqualTo(before);
+        try (var stmt = connection.createStatement();
+                var rs = stmt.executeQuery("SELECT IS_NULLABLE, DATA_TYPE, CHARACTER_MAXIMUM_LENGTH"
+                        + " FROM INFORMATION_SCHEMA.COLUMNS WHERE TABLE_NAME = 'PERSON' AND COLUMN_NAME = 'NAME'")) {
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getString(1)).isEqualTo("NO");
+            assertThat(rs.getString(2)).isEqualTo("CHARACTER VARYING");
+            assertThat(rs.getInt(3)).isEqualTo(50);
+        }
+    }
+
+    @Test
+    public void whenMySqlConnectorIsUsedWithoutCursorFetch_thenItIsDetected() {
+        assertThat(PreImageCapture.isCursorFetchEnabled("MySQL Connector/J", "jdbc:mysql://db/app")).isFalse();
+        assertThat(PreImageCapture.isCursorFetchEnabled("MySQL Connector/J",
+                "jdbc:mysql://db/app?useSSL=false&useCursorFetch=true")).isTrue();
+        assertThat(PreImageCapture.isCursorFetchEnabled("MariaDB Connector/J", "jdbc:mariadb://db/app")).isTrue();
+    }
+
+    @Test
+    public void whenDroppedTableIsRestored_thenRowsAreReinserted() throws Exception {
+        var change = new DropTableChange();
+        change.setTableName("person");
+        var changeSet = changeSet(change);
+        var capture = new PreImageCapture(properties);
+
+        capture.capture(change, changeSet, database);
+        var before = readPersons();
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("DROP TABLE person");
+        }
+        capture.restore(database, PreImageCapture.captureId(changeSet, 0));
+
+        assertThat(readPersons()).isEqualTo(before);
+    }
+
+    @Test
+    public void whenDeletedRowsAreRestored_thenOnlyMatchingRowsWereCaptured() throws Exception {
+        var change = new DeleteDataChange();
+        change.setTableName("person");
+        change.setWhere("id > 3");
+        var changeSet = changeSet(change);
+        var capture = new PreImageCapture(properties);
+
+        capture.capture(change, changeSet, database);
+        var before = readPersons();
+        assertThat(countChunks()).isEqualTo(2);
+
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("DELETE FROM person WHERE id > 3");
+        }
+        capture.restore(database, PreImageCapture.captureId(changeSet, 0));
+
+        assertThat(readPersons()).isEqualTo(before);
+    }
+
+    @Test
+    public void whenPreImageWasCaptured_thenRestoreMarkerIsGeneratedAsRollback() {
+        var change = new DropColumnChange();
+        change.setTableName("person");
+        change.setColumnName("email");
+        var changeSet = changeSet(change);
+        var customizer = new LiquibaseRollbackCustomizer(properties);
+
+        assertThat(customizer.generateRollbackStatements(changeSet, database)).isEmpty();
+
+        new PreImageCapture(properties).capture(change, changeSet, database);
+
+        assertThat(customizer.generateRollbackStatements(changeSet, database)).containsExactly(
+                PreImageCapture.restoreStatement(PreImageCapture.captureId(changeSet, 0)));
+    }
+
+    @Test
+    public void whenCaptureIsSkipped_thenEarlierCaptureIsDiscarded() throws Exception {
+        var change = new DropColumnChange();
+        change.setTableName("person");
+        change.setColumnName("email");
+        var changeSet = changeSet(change);
+        var capture = new PreImageCapture(properties);
+        capture.capture(change, changeSet, database);
+
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("ALTER TABLE person DROP PRIMARY KEY");
+        }
+        capture.capture(change, changeSet, database);
+
+        assertThat(capture.hasCapture(database, PreImageCapture.captureId(changeSet, 0))).isFalse();
+        assertThat(countChunks()).isZero();
+    }
+
+    @Test
+    public void whenNothingWasCaptured_thenRestoreFails() throws Exception {
+        var before = readPersons();
+
+        assertThatThrownBy(() -> new PreImageCapture(properties).restore(database, "0000000000000000-0"))
+                .isInstanceOf(DatabaseException.class)
+                .hasMessageContaining("is missing");
+        assertThat(readPersons()).isEqualTo(before);
+    }
+
+    @Test
+    public void whenColumnIsDroppedDuringUpdate_thenRollbackRestoresIt() throws Exception {
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("DROP TABLE person");
+        }
+        var customizer = new LiquibaseRollbackCustomizer(properties);
+        var liquibase = new Liquibase("db/changelog/test-changelog-preimage.yaml",
+                new ClassLoaderResourceAccessor(), database);
+        customizer.customize(liquibase);
+        liquibase.update();
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("UPDATE DATABASECHANGELOG SET FILENAME = 'db/changelog/other-branch.yaml'"
+                    + " WHERE ID = 'ID-02'");
+        }
+
+        customizer.customize(new Liquibase("db/changelog/test-changelog-preimage.yaml",
+                new ClassLoaderResourceAccessor(), database));
+
+        assertThat(readPersons()).containsExactly("1|Ann|ann@example.com", "2|Bob|null");
+    }
+
+    private static ChangeSet changeSet(Change change) {
+        var changeSet = new ChangeSet("ID-01", "author", false, false, "db/changelog/test.yaml", null, null, null);
+        changeSet.addChange(change);
+        return changeSet;
+    }
+
+    private List<String> readPersons() throws Exception {
+        var persons = new ArrayList<String>();
+        try (var stmt = connection.createStatement();
+                var rs = stmt.executeQuery("SELECT id, name, email FROM person ORDER BY id")) {
+            while (rs.next()) {
+                persons.add(rs.getInt(1) + "|" + rs.getString(2) + "|" + rs.getString(3));
+            }
+        }
+        return persons;
+    }
+
+    private int countChunks() throws Exception {
+        try (var stmt = connection.createStatement();
+                var rs = stmt.executeQuery("SELECT COUNT(*) FROM %s"
+                        .formatted(properties.getDbPreImageTableName()))) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.change.AddColumnConfig;
+import liquibase.change.Change;
+import liquibase.change.ColumnConfig;
+import liquibase.change.core.AddColumnChange;
+import liquibase.change.core.CreateIndexChange;
+import liquibase.change.core.CreateTableChange;
+import liquibase.change.core.RenameColumnChange;
+import liquibase.changelog.ChangeSet;
+import liquibase.database.Database;
+import liquibase.database.core.H2Database;
+import liquibase.database.core.MSSQLDatabase;
+import liquibase.database.core.MySQLDatabase;
+import liquibase.database.core.OracleDatabase;
+import liquibase.database.core.PostgresDatabase;
+import liquibase.sql.Sql;
+import liquibase.sqlgenerator.SqlGeneratorFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.whisperinggarden.lar.RollbackPlanOptimizer.NOT_SUPERSEDED;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RollbackPlanOptimizerTests {
+
+    @Test
+    void whenTableIsDroppedLater_thenEarlierChangesOfThatTableAreSuperseded() {
+        var plan = List.of(
+                List.of("DROP INDEX idx_person_name ON person"),
+                List.of("ALTER TABLE person DROP COLUMN address"),
+                List.of("ALTER TABLE \"PERSON\" DROP COLUMN email", "UPDATE person SET name = NULL"),
+                List.of("DROP TABLE person"));
+
+        assertThat(RollbackPlanOptimizer.findSupersededChangeSets(plan)).containsExactly(3, 3, 3, NOT_SUPERSEDED);
+    }
+
+    @Test
+    void whenOtherTablesAreModifiedInBetween_thenChangesAreStillSuperseded() {
+        var plan = List.of(
+                List.of("ALTER TABLE person DROP COLUMN address"),
+                List.of("ALTER TABLE city DROP COLUMN zip"),
+                List.of("DROP TABLE person"));
+
+        assertThat(RollbackPlanOptimizer.findSupersededChangeSets(plan))
+                .containsExactly(2, NOT_SUPERSEDED, NOT_SUPERSEDED);
+    }
+
+    @Test
+    void whenBarrierIsInBetween_thenChangesAreKept() {
+        var plan = List.of(
+                List.of("ALTER TABLE person DROP COLUMN address"),
+                List.of("ALTER TABLE person_old RENAME TO person"),
+                List.of("DROP TABLE person"));
+
+        assertThat(RollbackPlanOptimizer.findSupersededChangeSets(plan))
+                .containsExactly(NOT_SUPERSEDED, NOT_SUPERSEDED, NOT_SUPERSEDED);
+    }
+
+    @Test
+    void whenChangeSetTouchesSeveralTables_thenItIsKept() {
+        var plan = List.of(
+                List.of("ALTER TABLE person DROP COLUMN city_id", "ALTER TABLE city DROP COLUMN zip"),
+                List.of("DROP TABLE person"));
+
+        assertThat(RollbackPlanOptimizer.findSupersededChangeSets(plan)).containsExactly(NOT_SUPERSEDED, NOT_SUPERSEDED);
+    }
+
+    @Test
+    void whenChangeSetWithDropAlsoModifiesTableFirst_thenEarlierChangesAreKept() {
+        var plan = List.of(
+                List.of("ALTER TABLE person DROP COLUMN address"),
+                List.of("ALTER TABLE person DROP CONSTRAINT fk_person_city", "DROP TABLE person"));
+
+        assertThat(RollbackPlanOptimizer.findSupersededChangeSets(plan)).containsExactly(NOT_SUPERSEDED, NOT_SUPERSEDED);
+    }
+
+    @ParameterizedTest
+    @MethodSource("databases")
+    void whenTargetsComeFromChanges_thenGeneratedRollbackIsAttributedOnEveryDialect(Database db) {
+        // the rollback plan runs newest first: dropIndex, renameColumn, dropColumn, dropTable
+        var plan = rollbackPlan();
+
+        assertThat(RollbackPlanOptimizer.findSuperseded(plan.stream()
+                .map(changeSet -> RollbackPlanOptimizer.targetsOf(changeSet, db))
+                .toList()))
+                .containsExactly(3, 3, 3, NOT_SUPERSEDED);
+    }
+
+    @ParameterizedTest
+    @MethodSource("databases")
+    void whenTargetsAreClassifiedFromGeneratedSql_thenOnlyUnattributedStatementsAreKept(Database db) {
+        var plan = rollbackPlan();
+
+        // H2, PostgreSQL and Oracle don't name the table in DROP INDEX
+        var expected = db instanceof MSSQLDatabase || db instanceof MySQLDatabase
+                ? new int[] {3, 3, 3, NOT_SUPERSEDED}
+                : new int[] {NOT_SUPERSEDED, 3, 3, NOT_SUPERSEDED};
+        assertThat(RollbackPlanOptimizer.findSupersededChangeSets(plan.stream()
+                .map(changeSet -> rollbackSql(changeSet, db))
+                .toList()))
+                .containsExactly(expected);
+    }
+
+    @Test
+    void whenTargetsAreFormatted_thenTheyAreParsedBack() {
+        var db = new H2Database();
+        var targets = RollbackPlanOptimizer.targetsOf(rollbackPlan().get(1), db);
+
+        assertThat(RollbackPlanOptimizer.parseTargets(RollbackPlanOptimizer.formatTargets(targets)))
+                .isEqualTo(targets);
+        assertThat(RollbackPlanOptimizer.parseTargets("MODIFY:PUBLIC.PERSON\nBARRIER"))
+                .containsExactly(new RollbackPlanOptimizer.Target(RollbackPlanOptimizer.Kind.MODIFY, "PUBLIC.PERSON"),
+                        new RollbackPlanOptimizer.Target(RollbackPlanOptimizer.Kind.BARRIER, null));
+    }
+
+    static Stream<Database> databases() {
+        return Stream.of(new H2Database(), new PostgresDatabase(), new OracleDatabase(), new MSSQLDatabase(),
+                new MySQLDatabase());
+    }
+
+    private static List<ChangeSet> rollbackPlan() {
+        var createTable = new CreateTableChange();
+        createTable.setTableName("person");
+        createTable.addColumn(new ColumnConfig().setName("id").setType("int"));
+        createTable.addColumn(new ColumnConfig().setName("name").setType("varchar(100)"));
+
+        var addColumn = new AddColumnChange();
+        addColumn.setTableName("person");
+        addColumn.addColumn((AddColumnConfig) new AddColumnConfig().setName("email").setType("varchar(100)"));
+
+        var renameColumn = new RenameColumnChange();
+        renameColumn.setTableName("person");
+        renameColumn.setOldColumnName("name");
+        renameColumn.setNewColumnName("full_name");
+        renameColumn.setColumnDataType("varchar(100)");
+
+        var createIndex = new CreateIndexChange();
+        createIndex.setTableName("person");
+        createIndex.setIndexName("idx_person_email");
+        createIndex.addColumn((AddColumnConfig) new AddColumnConfig().setName("email"));
+
+        return List.of(changeSet("4", createIndex), changeSet("3", renameColumn), changeSet("2", addColumn),
+                changeSet("1", createTable));
+    }
+
+    private static ChangeSet changeSet(String id, Change change) {
+        var changeSet = new ChangeSet(id, "author", false, false, "db/changelog/test.yaml", null, null, null);
+        changeSet.addChange(change);
+        return changeSet;
+    }
+
+    private static List<String> rollbackSql(ChangeSet changeSet, Database db) {
+        try {
+            return Arrays.stream(SqlGeneratorFactory.getInstance().generateSql(
+                            changeSet.getChanges().get(0).generateRollbackStatements(db), db))
+                    .map(Sql::toSql)
+                    .toList();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
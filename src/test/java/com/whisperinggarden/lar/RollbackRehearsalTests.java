@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import liquibase.Liquibase;
+import liquibase.database.DatabaseFactory;
+import liquibase.database.jvm.JdbcConnection;
+import liquibase.resource.ClassLoaderResourceAccessor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.time.Duration;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class RollbackRehearsalTests {
+
+    private Connection connection;
+    private Liquibase liquibase;
+
+    @BeforeEach
+    public void beforeEach() throws Exception {
+        connection = DriverManager.getConnection("jdbc:h2:mem:testdb" + UUID.randomUUID(), "sa", "");
+        var database = DatabaseFactory.getInstance().findCorrectDatabaseImplementation(new JdbcConnection(connection));
+        liquibase = new Liquibase("db/changelog/test-changelog-norollback.yaml", new ClassLoaderResourceAccessor(),
+                database);
+    }
+
+    @AfterEach
+    public void afterEach() throws Exception {
+        connection.close();
+    }
+
+    @Test
+    public void whenRehearsed_thenEveryRollbackStatementIsTimedInRollbackOrder() throws Exception {
+        var report = new RollbackRehearsal(new LiquibaseRollbackProperties(), Duration.ZERO).rehearse(liquibase);
+
+        assertThat(report.statements())
+                .extracting(RollbackRehearsalReport.StatementCost::changeSetId,
+                        RollbackRehearsalReport.StatementCost::stmtOrder)
+                .containsExactly(
+                        tuple("ID-02", 1),
+                        tuple("ID-02", 2),
+                        tuple("ID-01", 1));
+        assertThat(report.slowStatements()).hasSize(3);
+
+        try (var stmt = connection.createStatement()) {
+            var tableRs = stmt.executeQuery("SELECT * FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME = 'BOOK'");
+            assertThat(tableRs.next()).isFalse();
+        }
+    }
+
+    @Test
+    public void whenThresholdIsNotReached_thenNoStatementIsFlagged() {
+        var report = new RollbackRehearsal(new LiquibaseRollbackProperties(), Duration.ofHours(1)).rehearse(liquibase);
+
+        assertThat(report.statements()).hasSize(3);
+        assertThat(report.slowStatements()).isEmpty();
+    }
+
+    @Test
+    public void whenPreImageCaptureIsEnabled_thenRestoreMarkerIsExecutedLikeInRealRollback() {
+        var properties = new LiquibaseRollbackProperties();
+        properties.setPreImageCapture(true);
+        var scratch = new Liquibase("db/changelog/test-changelog-preimage.yaml", new ClassLoaderResourceAccessor(),
+                liquibase.getDatabase());
+
+        var report = new RollbackRehearsal(properties, Duration.ofHours(1)).rehearse(scratch);
+
+        assertThat(report.statements())
+                .extracting(RollbackRehearsalReport.StatementCost::changeSetId)
+                .containsExactly("ID-02", "ID-01");
+        assertThat(report.statements().get(0).sql()).startsWith(PreImageCapture.RESTORE_PREFIX);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+public class RollbackRunTests {
+
+    @Test
+    void whenMoreStatementsThanLimitAreRecorded_thenOnlySlowestAreKept() {
+        var props = new LiquibaseRollbackProperties();
+        props.setHistorySlowestStatements(2);
+        var run = new RollbackRun(props);
+
+        run.recordExecutedStatement("ID-01", 1, 5_000_000);
+        run.recordExecutedStatement("ID-02", 1, 1_000_000);
+        run.recordExecutedStatement("ID-02", 2, 9_000_000);
+
+        assertThat(run.getStatementsExecuted()).isEqualTo(3);
+        assertThat(run.getSlowestStatements()).extracting(RollbackRun.StatementTiming::changeSetId,
+                        RollbackRun.StatementTiming::stmtOrder)
+                .containsExactly(
+                        tuple("ID-02", 2),
+                        tuple("ID-01", 1));
+        assertThat(RollbackRunHistory.formatSlowestStatements(run)).isEqualTo("ID-02#2=9ms;ID-01#1=5ms");
+    }
+
+    @Test
+    void whenStatementTimeoutExceedsRemainingBudget_thenRemainingBudgetIsUsed() {
+        var props = new LiquibaseRollbackProperties();
+        props.setStatementTimeout(Duration.ofHours(1));
+        props.setStartupBudget(Duration.ofMinutes(1));
+        var run = new RollbackRun(props);
+
+        assertThat(run.nextStatementTimeout()).isLessThanOrEqualTo(Duration.ofMinutes(1));
+        assertThat(run.isBudgetExhausted()).isFalse();
+    }
+}
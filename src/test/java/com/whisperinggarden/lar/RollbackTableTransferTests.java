@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2025 Sergei Shushkevich
+ * Licensed under the MIT License. See LICENSE file in the project root for full license information.
+ */
+
+package com.whisperinggarden.lar;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_CHECKSUM;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_HASH;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_CHANGELOG_ID;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ID;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMT;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMTEXECUTED;
+import static com.whisperinggarden.lar.LiquibaseRollbackCustomizer.COL_ROLLBACKSTMTORDER;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RollbackTableTransferTests {
+
+    private static final String ROLLBACK_TBL = "ROLLBACK_TEST_TBL";
+
+    private Connection source;
+    private Connection target;
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    public void beforeEach() throws Exception {
+        source = DriverManager.getConnection("jdbc:h2:mem:testdb" + UUID.randomUUID(), "sa", "");
+        target = DriverManager.getConnection("jdbc:h2:mem:testdb" + UUID.randomUUID(), "sa", "");
+        createRollbackTable(source);
+        createRollbackTable(target);
+        try (var stmt = source.prepareStatement("INSERT INTO %s (%s, %s, %s, %s, %s) VALUES (?, ?, ?, ?, ?)"
+                .formatted(ROLLBACK_TBL, COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM,
+                        COL_ROLLBACKSTMT, COL_ROLLBACKSTMTORDER, COL_ROLLBACKSTMTEXECUTED))) {
+            for (var i = 1; i <= 5; i++) {
+                stmt.setString(1, "ID-0" + i);
+                stmt.setString(2, "9:" + i);
+                stmt.setString(3, "UPDATE t\tSET note = 'line\\n%d'\nWHERE id = %d".formatted(i, i));
+                stmt.setInt(4, 1);
+                // an interrupted rollback must resume at the same statement after the import
+                stmt.setBoolean(5, i == 2);
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    @AfterEach
+    public void afterEach() throws Exception {
+        source.close();
+        target.close();
+    }
+
+    @Test
+    public void whenExportedAndImported_thenRollbackStatementsAreCopied() throws Exception {
+        var transfer = new RollbackTableTransfer(ROLLBACK_TBL, 2);
+        var out = new ByteArrayOutputStream();
+
+        assertThat(transfer.exportTo(source, out)).isEqualTo(5);
+        assertThat(transfer.importFrom(target, new ByteArrayInputStream(out.toByteArray()), null)).isEqualTo(5);
+
+        assertThat(readStatements(target)).isEqualTo(readStatements(source));
+    }
+
+    @Test
+    public void whenCheckpointExists_thenImportResumesAfterIt() throws Exception {
+        var transfer = new RollbackTableTransfer(ROLLBACK_TBL, 2);
+        var out = new ByteArrayOutputStream();
+        transfer.exportTo(source, out);
+        var checkpoint = tempDir.resolve("import.checkpoint");
+        Files.writeString(checkpoint, "3");
+
+        assertThat(transfer.importFrom(target, new ByteArrayInputStream(out.toByteArray()), checkpoint))
+                .isEqualTo(2);
+
+        try (var stmt = target.createStatement()) {
+            var rs = stmt.executeQuery("SELECT %s FROM %s ORDER BY %s".formatted(COL_CHANGELOG_ID, ROLLBACK_TBL, COL_ID));
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getString(1)).isEqualTo("ID-04");
+            assertThat(rs.next()).isTrue();
+            assertThat(rs.getString(1)).isEqualTo("ID-05");
+            assertThat(rs.next()).isFalse();
+        }
+        assertThat(checkpoint).doesNotExist();
+    }
+
+    @Test
+    public void whenBatchWasCommittedButCheckpointIsBehind_thenCommittedRowsAreNotInsertedAgain() throws Exception {
+        var transfer = new RollbackTableTransfer(ROLLBACK_TBL, 2);
+        var out = new ByteArrayOutputStream();
+        transfer.exportTo(source, out);
+        transfer.importFrom(target, new ByteArrayInputStream(out.toByteArray()), null);
+        try (var stmt = target.createStatement()) {
+            stmt.executeUpdate("DELETE FROM %s WHERE %s IN ('ID-04', 'ID-05')".formatted(ROLLBACK_TBL, COL_CHANGELOG_ID));
+        }
+        // the batch with ID-03 was committed, the checkpoint still points before it
+        var checkpoint = tempDir.resolve("import.checkpoint");
+        Files.writeString(checkpoint, "2");
+
+        assertThat(transfer.importFrom(target, new ByteArrayInputStream(out.toByteArray()), checkpoint))
+                .isEqualTo(2);
+
+        assertThat(readStatements(target)).isEqualTo(readStatements(source));
+        assertThat(checkpoint).doesNotExist();
+    }
+
+    @Test
+    public void whenFileHasFirstFormatVersion_thenItIsImportedAsNotExecuted() throws Exception {
+        var out = new ByteArrayOutputStream();
+        try (var gzip = new GZIPOutputStream(out)) {
+            gzip.write("#liquibase-auto-rollback/1\nID-01\t9:1\t1\tDROP TABLE t\n".getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertThat(new RollbackTableTransfer(ROLLBACK_TBL).importFrom(target,
+                new ByteArrayInputStream(out.toByteArray()), null)).isEqualTo(1);
+
+        assertThat(readStatements(target)).isEqualTo("ID-01|9:1|DROP TABLE t|1|false\n");
+    }
+
+    @Test
+    public void whenValueHasSpecialCharacters_thenEscapingIsReversible() {
+        var value = "a\tb\nc\rd\\e";
+
+        assertThat(RollbackTableTransfer.escape(value)).doesNotContain("\t", "\n", "\r");
+        assertThat(RollbackTableTransfer.unescape(RollbackTableTransfer.escape(value))).isEqualTo(value);
+    }
+
+    private String readStatements(Connection connection) throws SQLException {
+        var sb = new StringBuilder();
+        try (var stmt = connection.createStatement()) {
+            var rs = stmt.executeQuery("SELECT %s, %s, %s, %s, %s FROM %s ORDER BY %s".formatted(COL_CHANGELOG_ID,
+                    COL_CHANGELOG_CHECKSUM, COL_ROLLBACKSTMT, COL_ROLLBACKSTMTORDER, COL_ROLLBACKSTMTEXECUTED,
+                    ROLLBACK_TBL, COL_ID));
+            while (rs.next()) {
+                sb.append(rs.getString(1)).append('|').append(rs.getString(2)).append('|')
+                        .append(rs.getString(3)).append('|').append(rs.getInt(4)).append('|')
+                        .append(rs.getBoolean(5)).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private void createRollbackTable(Connection connection) throws SQLException {
+        try (var stmt = connection.createStatement()) {
+            stmt.executeUpdate("""
+                CREATE TABLE %s (
+                    %s INT AUTO_INCREMENT PRIMARY KEY,
+                    %s VARCHAR(255) NOT NULL,
+                    %s VARCHAR(100) NOT NULL,
+                    %s VARCHAR(4096) NOT NULL,
+                    %s INT NOT NULL,
+                    %s BIGINT,
+                    %s BOOLEAN
+                );
+            """.formatted(ROLLBACK_TBL, COL_ID, COL_CHANGELOG_ID, COL_CHANGELOG_CHECKSUM,
+                    COL_ROLLBACKSTMT, COL_ROLLBACKSTMTORDER, COL_CHANGELOG_HASH, COL_ROLLBACKSTMTEXECUTED));
+        }
+    }
+}